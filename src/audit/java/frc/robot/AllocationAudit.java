@@ -0,0 +1,153 @@
+package frc.robot;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs {@link Robot} through every mode in simulation and measures how many bytes the robot thread
+ * allocates per loop, so garbage in the main loop is caught before it shows up as GC pauses on the
+ * rio. Simulated time is stepped by hand like in {@link MatchReplay}: each tick steps the shoulder's
+ * 5 ms periodic and runs one robot loop. The controllers move the whole time, and the operator
+ * walks the arm through its setpoints in teleop.
+ *
+ * <p>Each mode is warmed up first so the JIT has compiled the loop (escape analysis removes some
+ * allocations only once code is compiled), then measured with the thread's allocation counter from
+ * ThreadMXBean. Threads other than the robot thread (the logger, NetworkTables, cameras) are not
+ * counted, that is where work that has to allocate belongs.
+ *
+ * <p>Our own code is allocation-free, the budgets below are for WPILib: its loop watchdogs box an
+ * epoch time into a Long when it is over 127 us, and in autonomous the command scheduler builds a
+ * "&lt;name&gt;.execute()" string for every command it runs, every loop.
+ *
+ * <p>Exits with 1 if a mode goes over its budget. Run with {@code ./gradlew allocationAudit}, it is
+ * in its own source set so it stays out of the robot jar.
+ */
+public final class AllocationAudit {
+  private static final String[] kModeNames = {"Disabled", "Autonomous", "Teleop", "Test"};
+  private static final int kDisabled = 0;
+  private static final int kAutonomous = 1;
+  private static final int kTeleop = 2;
+  private static final int kTest = 3;
+  private static final int kModeCount = 4;
+
+  /** Most bytes per loop each mode may allocate on the robot thread, in mode order. */
+  private static final double[] kBudgets = {64, 256, 64, 64};
+
+  private static final int kDefaultWarmupTicks = 20000;
+  private static final int kDefaultMeasuredTicks = 10000;
+  // loops after a mode change that are not measured, the init functions may allocate
+  private static final int kSettleTicks = 100;
+
+  // operator buttons pressed in turn during teleop, a new one every kButtonTicks loops
+  private static final int[] kSetpointButtons = {
+    ControllerInput.kA, ControllerInput.kB, ControllerInput.kY, ControllerInput.kX,
+    ControllerInput.kLeftBumper, ControllerInput.kBack
+  };
+  private static final int kButtonTicks = 100;
+
+  private static Robot s_robot;
+  private static ShoulderController s_shoulder;
+  private static double s_period;
+  private static int s_shoulderSteps;
+  private static long s_tick;
+
+  private AllocationAudit() {}
+
+  public static void main(String... args) {
+    int warmupTicks = args.length > 0 ? Integer.parseInt(args[0]) : kDefaultWarmupTicks;
+    int measuredTicks = args.length > 1 ? Integer.parseInt(args[1]) : kDefaultMeasuredTicks;
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    if (!threads.isThreadAllocatedMemorySupported()) {
+      System.err.println("This JVM cannot count allocated bytes per thread.");
+      System.exit(1);
+    }
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long thread = Thread.currentThread().getId();
+
+    if (!HAL.initialize(500, 0))
+      throw new IllegalStateException("Failed to initialize the HAL.");
+    SimHooks.pauseTiming();
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setAllianceStationId(AllianceStationID.Blue1);
+    for (int port = 0; port < 2; port++) {
+      DriverStationSim.setJoystickAxisCount(port, ControllerInput.kAxisCount);
+      DriverStationSim.setJoystickButtonCount(port, 10);
+    }
+
+    s_robot = new Robot();
+    s_robot.robotInit();
+    if (!s_robot.awaitBackgroundInit(10))
+      throw new IllegalStateException("The robot's background init did not finish.");
+    s_robot.simulationInit();
+    s_shoulder = s_robot.getShoulder();
+    s_period = s_robot.getPeriod();
+    s_shoulderSteps = Math.max(1, (int) Math.round(s_period / ShoulderController.kPeriod));
+
+    for (int mode = 0; mode < kModeCount; mode++) {
+      setMode(mode);
+      run(mode, warmupTicks);
+    }
+
+    // the allocation counter itself, so it can be taken off every measurement
+    long overhead = threads.getThreadAllocatedBytes(thread);
+    overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+    boolean failed = false;
+    for (int mode = 0; mode < kModeCount; mode++) {
+      setMode(mode);
+      run(mode, kSettleTicks);
+      long before = threads.getThreadAllocatedBytes(thread);
+      run(mode, measuredTicks);
+      long bytes = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+      double perTick = (double) bytes / measuredTicks;
+      boolean over = perTick > kBudgets[mode];
+      failed |= over;
+      System.out.printf("%-10s %8.1f bytes/loop (%d bytes in %d loops), budget %.0f%s%n",
+          kModeNames[mode], perTick, bytes, measuredTicks, kBudgets[mode], over ? "  OVER BUDGET" : "");
+    }
+    System.exit(failed ? 1 : 0);
+  }
+
+  private static void setMode(int mode) {
+    DriverStationSim.setEnabled(mode != kDisabled);
+    DriverStationSim.setAutonomous(mode == kAutonomous);
+    DriverStationSim.setTest(mode == kTest);
+    DriverStationSim.notifyNewData();
+  }
+
+  private static void run(int mode, int ticks) {
+    for (int i = 0; i < ticks; i++) {
+      setControllers(mode == kTeleop);
+      for (int step = 0; step < s_shoulderSteps; step++) {
+        SimHooks.stepTiming(s_period / s_shoulderSteps);
+        s_shoulder.controlPeriodic();
+      }
+      s_robot.loopFunc();
+      s_tick++;
+    }
+  }
+
+  // sticks sweep back and forth, triggers take turns, one setpoint button is held for half of
+  // each button period
+  private static void setControllers(boolean pressButtons) {
+    double phase = s_tick * s_period;
+    DriverStationSim.setJoystickAxis(0, ControllerInput.kLeftY, Math.sin(phase));
+    DriverStationSim.setJoystickAxis(0, ControllerInput.kRightX, Math.cos(phase * 0.7));
+    DriverStationSim.setJoystickAxis(1, ControllerInput.kLeftTrigger, Math.max(0, Math.sin(phase * 0.3)));
+    DriverStationSim.setJoystickAxis(1, ControllerInput.kRightTrigger, Math.max(0, -Math.sin(phase * 0.3)));
+
+    int buttons = 0;
+    long slot = s_tick / kButtonTicks;
+    if (pressButtons && s_tick % kButtonTicks < kButtonTicks / 2) {
+      buttons = kSetpointButtons[(int) (slot % kSetpointButtons.length)];
+    }
+    DriverStationSim.setJoystickButtons(1, buttons);
+    DriverStationSim.notifyNewData();
+  }
+}
@@ -0,0 +1,70 @@
+package frc.robot;
+
+import edu.wpi.first.hal.HAL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one tick of each {@link autoBalance} routine, including the accelerometer sample the
+ * robot takes at the start of every loop. The routines are restarted every iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutoBalanceBenchmark {
+  private autoBalance m_autoBalance;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    HAL.initialize(500, 0);
+    m_autoBalance = new autoBalance();
+  }
+
+  @Setup(Level.Iteration)
+  public void restart() {
+    m_autoBalance.reset();
+  }
+
+  @Benchmark
+  public double update() {
+    m_autoBalance.update();
+    return m_autoBalance.getTilt();
+  }
+
+  @Benchmark
+  public double score() {
+    m_autoBalance.update();
+    return m_autoBalance.score();
+  }
+
+  @Benchmark
+  public double scoreAndDrive() {
+    m_autoBalance.update();
+    return m_autoBalance.scoreAndDrive();
+  }
+
+  @Benchmark
+  public double scoreAndBalance() {
+    m_autoBalance.update();
+    return m_autoBalance.scoreAndBalance();
+  }
+
+  @Benchmark
+  public double autoBalanceRoutine() {
+    m_autoBalance.update();
+    return m_autoBalance.autoBalanceRoutine();
+  }
+}
@@ -0,0 +1,97 @@
+package frc.robot;
+
+import com.revrobotics.REVLibError;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures what {@link DeviceMonitor} adds to a device call, against stand-in devices that take a
+ * fixed amount of work instead of going through JNI, so the numbers do not depend on the HAL.
+ * Compare bareCall with monitoredCall for the overhead, gc.alloc.rate.norm should be 0 for all of
+ * them. The counting and health are tested in DeviceMonitorTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceMonitorBenchmark {
+  // about a microsecond of work, the order of a REVLib set
+  private static final long kCallTokens = 200;
+
+  /** Answers every call after a fixed amount of work, like a healthy Spark MAX. */
+  static class StandInSpark {
+    private REVLibError m_lastError = REVLibError.kOk;
+
+    void set(double output) {
+      Blackhole.consumeCPU(kCallTokens);
+    }
+
+    REVLibError getLastError() {
+      return m_lastError;
+    }
+  }
+
+  /** Times out on every call, like a Spark MAX that is not on the bus. */
+  static class MissingSpark extends StandInSpark {
+    @Override
+    REVLibError getLastError() {
+      return REVLibError.kTimeout;
+    }
+  }
+
+  private final StandInSpark m_spark = new StandInSpark();
+  private final StandInSpark m_missingSpark = new MissingSpark();
+  private DeviceMonitor.Device m_device;
+  private DeviceMonitor.Call m_setCall;
+  private DeviceMonitor.Call m_missingSetCall;
+  private double m_output;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    m_device = new DeviceMonitor.Device("stand-in");
+    m_setCall = m_device.addCall("set", 1);
+    DeviceMonitor.Device missingDevice = new DeviceMonitor.Device("missing stand-in");
+    m_missingSetCall = missingDevice.addCall("set", 1);
+  }
+
+  @Benchmark
+  public void bareCall() {
+    m_output = -m_output + 0.5;
+    m_spark.set(m_output);
+  }
+
+  @Benchmark
+  public void monitoredCall() {
+    m_output = -m_output + 0.5;
+    long start = System.nanoTime();
+    m_spark.set(m_output);
+    m_setCall.record(System.nanoTime() - start, m_spark.getLastError());
+  }
+
+  @Benchmark
+  public void monitoredMissingCall() {
+    m_output = -m_output + 0.5;
+    long start = System.nanoTime();
+    m_missingSpark.set(m_output);
+    m_missingSetCall.record(System.nanoTime() - start, m_missingSpark.getLastError());
+  }
+
+  @Benchmark
+  public String update() {
+    m_device.update();
+    return m_device.getHealth();
+  }
+}
@@ -0,0 +1,60 @@
+package frc.robot;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.AddressableLED;
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures filling the 120 pixel strip from robotInit and pushing it to the LED driver. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LedBenchmark {
+  private AddressableLED m_led;
+  private AddressableLEDBuffer m_ledBuffer;
+  private int m_blue;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    HAL.initialize(500, 0);
+    m_led = new AddressableLED(9);
+    m_ledBuffer = new AddressableLEDBuffer(120);
+    m_led.setLength(m_ledBuffer.getLength());
+    m_led.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_led.close();
+  }
+
+  @Benchmark
+  public AddressableLEDBuffer fill() {
+    m_blue = (m_blue + 1) & 0xFF;
+    for (var i = 0; i < m_ledBuffer.getLength(); i++) {
+      m_ledBuffer.setRGB(i, 0, 0, m_blue);
+    }
+    return m_ledBuffer;
+  }
+
+  @Benchmark
+  public void fillAndSetData() {
+    fill();
+    m_led.setData(m_ledBuffer);
+  }
+}
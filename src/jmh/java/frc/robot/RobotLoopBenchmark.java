@@ -0,0 +1,74 @@
+package frc.robot;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the periodic functions of {@link Robot} against the HAL simulation. Each benchmark
+ * method runs in its own fork, so every fork gets a fresh robot and fresh HAL handles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RobotLoopBenchmark {
+  private Robot m_robot;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    HAL.initialize(500, 0);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.setAutonomous(false);
+    DriverStationSim.notifyNewData();
+    m_robot = new Robot();
+    m_robot.robotInit();
+    m_robot.awaitBackgroundInit(10);
+  }
+
+  @Setup(Level.Iteration)
+  public void restartModes() {
+    m_robot.autonomousInit();
+    m_robot.teleopInit();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_robot.close();
+  }
+
+  @Benchmark
+  public void robotPeriodic() {
+    m_robot.robotPeriodic();
+  }
+
+  @Benchmark
+  public void teleopPeriodic() {
+    m_robot.teleopPeriodic();
+  }
+
+  @Benchmark
+  public void autonomousPeriodic() {
+    m_robot.autonomousPeriodic();
+  }
+
+  /** One full TimedRobot loop in teleop, including the shared sensor sampling and dashboard update. */
+  @Benchmark
+  public void teleopLoop() {
+    m_robot.loopFunc();
+  }
+}
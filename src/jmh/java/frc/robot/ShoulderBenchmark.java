@@ -0,0 +1,65 @@
+package frc.robot;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.RelativeEncoder;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.controller.PIDController;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the shoulder control path from teleopPeriodic: encoder read, PID calculation and the
+ * Spark MAX set, separately and together. Uses the same gains and CAN ID as {@link Robot}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShoulderBenchmark {
+  private final PIDController m_pid = new PIDController(0.016, 0.002, 0.0);
+  private CANSparkMax m_shoulder;
+  private RelativeEncoder m_encoder;
+  private double m_setpoint = 41;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    HAL.initialize(500, 0);
+    m_shoulder = new CANSparkMax(5, MotorType.kBrushless);
+    m_encoder = m_shoulder.getEncoder();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_shoulder.close();
+  }
+
+  @Benchmark
+  public double pidCalculate() {
+    return m_pid.calculate(10, m_setpoint);
+  }
+
+  @Benchmark
+  public double encoderPosition() {
+    return m_encoder.getPosition();
+  }
+
+  @Benchmark
+  public void shoulderPath() {
+    double pidValue = m_pid.calculate(m_encoder.getPosition(), m_setpoint);
+    m_shoulder.set(0.01 + pidValue);
+  }
+}
@@ -0,0 +1,145 @@
+package frc.robot;
+
+import edu.wpi.first.wpilibj.BuiltInAccelerometer;
+import edu.wpi.first.wpilibj.Timer;
+
+//Reads the rio accelerometer once per loop and keeps a low pass filtered copy of the gravity
+//vector. Pitch, roll and tilt are computed once per update so every caller in the same tick
+//sees the same angle. There is no gyro on the robot, so the "complementary" half of the filter
+//is just the previous filtered estimate.
+public class AttitudeEstimator {
+    private final BuiltInAccelerometer mAccel;
+    private double timeConstant;
+
+    private double rawX;
+    private double rawY;
+    private double rawZ;
+    private double x;
+    private double y;
+    private double z;
+    private double pitch;
+    private double roll;
+    private double tilt;
+    private double rawTilt;
+    private double tiltRate;
+    private double lastTimestamp;
+    private boolean seeded;
+
+    //timeConstant is the low pass time constant in seconds, 0 disables filtering
+    public AttitudeEstimator(BuiltInAccelerometer accel, double timeConstant){
+        mAccel = accel;
+        this.timeConstant = timeConstant;
+        seeded = false;
+    }
+
+    //change the low pass time constant, the filtered estimate carries on from where it is
+    public void setTimeConstant(double timeConstant){
+        this.timeConstant = timeConstant;
+    }
+
+    //take one sample, call this once at the start of every loop
+    public void update(){
+        update(Timer.getFPGATimestamp());
+    }
+
+    public void update(double timestamp){
+        update(timestamp, mAccel.getX(), mAccel.getY(), mAccel.getZ());
+    }
+
+    //take a sample that was read somewhere else, x/y/z are in g
+    public void update(double timestamp, double sampleX, double sampleY, double sampleZ){
+        rawX = sampleX;
+        rawY = sampleY;
+        rawZ = sampleZ;
+
+        double dt = timestamp - lastTimestamp;
+        boolean continued = seeded && dt > 0;
+        double alpha = timeConstant > 0 ? dt / (timeConstant + dt) : 1;
+        if(!continued || timeConstant <= 0){
+            //first sample (or a timestamp that went backwards), start from the raw reading
+            x = rawX;
+            y = rawY;
+            z = rawZ;
+            seeded = true;
+        } else {
+            x += alpha * (rawX - x);
+            y += alpha * (rawY - y);
+            z += alpha * (rawZ - z);
+        }
+        lastTimestamp = timestamp;
+
+        double lastTilt = tilt;
+        pitch = pitchOf(x, y, z);
+        roll = rollOf(y, z);
+        tilt = tiltOf(pitch, roll);
+        rawTilt = tiltOf(pitchOf(rawX, rawY, rawZ), rollOf(rawY, rawZ));
+
+        //differencing the filtered tilt still amplifies the noise by 1/dt, so the rate gets the
+        //same low pass again
+        if(continued){
+            tiltRate += alpha * ((tilt - lastTilt) / dt - tiltRate);
+        } else {
+            tiltRate = 0;
+        }
+    }
+
+    //forget the filter history, the next update starts from the raw reading
+    public void reset(){
+        seeded = false;
+    }
+
+    public double getPitch(){
+        return pitch;
+    }
+
+    public double getRoll(){
+        return roll;
+    }
+
+    //filtered tilt, see tiltOf
+    public double getTilt(){
+        return tilt;
+    }
+
+    //rate of change of the filtered tilt in degrees per second, 0 on the first sample
+    public double getTiltRate(){
+        return tiltRate;
+    }
+
+    //unfiltered tilt from the latest sample, useful for comparing against the filter
+    public double getRawTilt(){
+        return rawTilt;
+    }
+
+    //raw accelerometer axes from the latest sample, in g
+    public double getRawX(){
+        return rawX;
+    }
+
+    public double getRawY(){
+        return rawY;
+    }
+
+    public double getRawZ(){
+        return rawZ;
+    }
+
+    public double getTimestamp(){
+        return lastTimestamp;
+    }
+
+    public static double pitchOf(double x, double y, double z){
+        return Math.atan2(-x, Math.sqrt(y * y + z * z)) * 57.3;
+    }
+
+    public static double rollOf(double y, double z){
+        return Math.atan2(y, z) * 57.3;
+    }
+
+    //magnititude of the robot's tilt calculated by the root of pitch^2 + roll^2,
+    //used to compensate for diagonally mounted rio
+    public static double tiltOf(double pitch, double roll){
+        double magnitude = Math.sqrt(pitch * pitch + roll * roll);
+        return (pitch + roll) >= 0 ? magnitude : -magnitude;
+    }
+}
@@ -0,0 +1,90 @@
+package frc.robot;
+
+//Every tunable number used by autoBalance. Immutable, so one instance can be shared between
+//threads (the simulation tuner runs many at once) and swapped as a whole.
+public final class AutoBalanceConfig {
+    /**********
+     * CONFIG *
+     **********/
+    //Speed the robot drived while scoring/approaching station, default = 0.4
+    public final double robotSpeedFast;
+
+    //Speed the robot drives while balancing itself on the charge station.
+    //Should be roughly half the fast speed, to make the robot more accurate, default = 0.2
+    public final double robotSpeedSlow;
+
+    //Angle where the robot knows it is on the charge station, default = 13.0
+    public final double onChargeStationDegree;
+
+    //Angle where the robot can assume it is level on the charging station
+    //Used for exiting the drive forward sequence as well as for auto balancing, default = 6.0
+    public final double levelDegree;
+
+    //Amount of time a sensor condition needs to be met before changing states in seconds
+    //Reduces the impact of sensor noise, but too high can make the auto run slower, default = 0.2
+    //The tilt is low pass filtered (see tiltFilterTime) so less debounce is needed, was 0.35
+    public final double debounceTime;
+
+    //Time constant of the low pass filter on the accelerometer in seconds, 0 = unfiltered
+    //Adds roughly this much lag to the tilt, so keep debounceTime + tiltFilterTime near the old debounce
+    public final double tiltFilterTime;
+
+    //Amount of time to drive towards the target when trying to bump the game piece off
+    //Time it takes to go from starting position to hit the scoring target
+    public final double singleTapTime;
+
+    //Amount of time to drive away from knocked over gamepiece before the second tap
+    public final double scoringBackUpTime;
+
+    //Amount of time to drive forward to secure the scoring of the gamepiece
+    public final double doubleTapTime;
+
+    //Amount of time to drive away from the grid to get out of the community in seconds
+    public final double escapeTime;
+
+    //Gains for the final balancing stage, null for the old bang-bang stage that drives
+    //+-robotSpeedSlow (0.1 in the plain balance routine) whenever the tilt crosses levelDegree
+    public final BalanceGains balanceGains;
+
+    //Bang-bang final stage, BalanceGains.kDefault is only tuned in simulation so far
+    public static final AutoBalanceConfig kDefault = new AutoBalanceConfig(
+        0.75, 0.6, -82.0, -71.0, 0.25, 0.1, 0.3, 0.3, 1, 2, null);
+
+    public AutoBalanceConfig(double robotSpeedFast, double robotSpeedSlow, double onChargeStationDegree,
+            double levelDegree, double debounceTime, double tiltFilterTime, double singleTapTime,
+            double scoringBackUpTime, double doubleTapTime, double escapeTime, BalanceGains balanceGains){
+        this.robotSpeedFast = robotSpeedFast;
+        this.robotSpeedSlow = robotSpeedSlow;
+        this.onChargeStationDegree = onChargeStationDegree;
+        this.levelDegree = levelDegree;
+        this.debounceTime = debounceTime;
+        this.tiltFilterTime = tiltFilterTime;
+        this.singleTapTime = singleTapTime;
+        this.scoringBackUpTime = scoringBackUpTime;
+        this.doubleTapTime = doubleTapTime;
+        this.escapeTime = escapeTime;
+        this.balanceGains = balanceGains;
+    }
+
+    //copy of this config with different charge station parameters, the scoring times are kept
+    public AutoBalanceConfig withBalance(double robotSpeedFast, double robotSpeedSlow,
+            double onChargeStationDegree, double levelDegree, double debounceTime){
+        return new AutoBalanceConfig(robotSpeedFast, robotSpeedSlow, onChargeStationDegree, levelDegree,
+            debounceTime, tiltFilterTime, singleTapTime, scoringBackUpTime, doubleTapTime, escapeTime,
+            balanceGains);
+    }
+
+    //copy of this config with different final balancing gains, null for bang-bang
+    public AutoBalanceConfig withBalanceGains(BalanceGains balanceGains){
+        return new AutoBalanceConfig(robotSpeedFast, robotSpeedSlow, onChargeStationDegree, levelDegree,
+            debounceTime, tiltFilterTime, singleTapTime, scoringBackUpTime, doubleTapTime, escapeTime,
+            balanceGains);
+    }
+
+    @Override
+    public String toString(){
+        return "fast=" + robotSpeedFast + " slow=" + robotSpeedSlow + " onStation=" + onChargeStationDegree
+            + " level=" + levelDegree + " debounce=" + debounceTime
+            + (balanceGains != null ? " pd(" + balanceGains + ")" : " bang-bang");
+    }
+}
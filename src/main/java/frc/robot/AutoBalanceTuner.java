@@ -0,0 +1,273 @@
+package frc.robot;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Batch runner that tries many autoBalance configurations against {@link ChargeStationSim}.
+ * Every trial is a whole 15 second auto on virtual time, autoBalance is fed simulated
+ * accelerometer samples with {@link autoBalance#update(double, double, double, double)} so nothing
+ * sleeps and nothing needs the HAL. Combinations are spread over all cores with a parallel stream,
+ * each one runs a number of trials with different noise and starting station angles.
+ *
+ * <p>Run with {@code ./gradlew tuneAutoBalance}, optionally with
+ * {@code -PtuneArgs="combinations trials routine"} where routine is "balance" or
+ * "scoreAndBalance". Results for every combination go to build/autoBalanceTuning.csv, the best
+ * ones are printed, then the current and best configurations are run again at 20, 10 and 5 ms
+ * loop periods.
+ *
+ * <p>{@code ./gradlew benchmarkAutoBalance} (-PbenchmarkTrials to change the 100 trials) instead runs a fixed set of
+ * autos with the old bang-bang final stage and the PD stage (see {@link BalanceGains}) and prints
+ * the time to engaged and the overshoot of each.
+ */
+public final class AutoBalanceTuner {
+  private static final double kAutoLength = 15.0;
+  private static final double kPeriod = Robot.kPeriod;
+  // the loop periods the routines have to behave the same at, see comparePeriods
+  private static final double[] kComparePeriods = {0.02, 0.01, 0.005};
+  private static final double kNoise = 0.02;
+  private static final int kPrintCount = 15;
+
+  private AutoBalanceTuner() {}
+
+  /** What happened in one simulated auto. */
+  public static final class Trial {
+    /** Seconds into auto the station went level for good, NaN if it never did. */
+    public final double timeToBalance;
+    public final double finalAngle;
+    /**
+     * Seconds into auto the robot was first on a level station during the final balancing stage,
+     * NaN if it never was.
+     */
+    public final double timeToEngaged;
+    /** Largest station angle in degrees after that, NaN if the station was never level. */
+    public final double overshoot;
+
+    Trial(double timeToBalance, double finalAngle, double timeToEngaged, double overshoot) {
+      this.timeToBalance = timeToBalance;
+      this.finalAngle = finalAngle;
+      this.timeToEngaged = timeToEngaged;
+      this.overshoot = overshoot;
+    }
+
+    public boolean isBalanced() {
+      return !Double.isNaN(timeToBalance);
+    }
+  }
+
+  /** Summary of all trials of one configuration. */
+  public static final class Result {
+    public final AutoBalanceConfig config;
+    public final int trials;
+    public final int failures;
+    public final double meanTime;
+    public final double worstTime;
+    /** Over the trials that engaged during the final stage, NaN if none did. */
+    public final double meanTimeToEngaged;
+    public final double meanOvershoot;
+    public final double worstOvershoot;
+
+    Result(AutoBalanceConfig config, Trial[] results) {
+      this.config = config;
+      trials = results.length;
+      double[] times = Arrays.stream(results)
+          .filter(Trial::isBalanced)
+          .mapToDouble(trial -> trial.timeToBalance)
+          .toArray();
+      failures = trials - times.length;
+      meanTime = times.length > 0 ? Arrays.stream(times).average().getAsDouble() : Double.NaN;
+      worstTime = times.length > 0 ? Arrays.stream(times).max().getAsDouble() : Double.NaN;
+      Trial[] engaged = Arrays.stream(results)
+          .filter(trial -> !Double.isNaN(trial.timeToEngaged))
+          .toArray(Trial[]::new);
+      meanTimeToEngaged = Arrays.stream(engaged).mapToDouble(trial -> trial.timeToEngaged).average().orElse(Double.NaN);
+      meanOvershoot = Arrays.stream(engaged).mapToDouble(trial -> trial.overshoot).average().orElse(Double.NaN);
+      worstOvershoot = Arrays.stream(engaged).mapToDouble(trial -> trial.overshoot).max().orElse(Double.NaN);
+    }
+
+    public double getFailureRate() {
+      return (double) failures / trials;
+    }
+  }
+
+  /**
+   * Run one auto on virtual time.
+   *
+   * @param scoreFirst run the "Score + Balance" routine instead of "Balance"
+   * @param seed seeds the sensor noise and the starting angle of the station
+   */
+  public static Trial runTrial(AutoBalanceConfig config, boolean scoreFirst, long seed) {
+    return runTrial(config, scoreFirst, seed, kPeriod);
+  }
+
+  /** Same as {@link #runTrial(AutoBalanceConfig, boolean, long)} with a robot loop period in seconds. */
+  public static Trial runTrial(AutoBalanceConfig config, boolean scoreFirst, long seed, double period) {
+    Random random = new Random(seed);
+    ChargeStationSim sim = new ChargeStationSim(random.nextLong(), kNoise);
+    sim.setInitialStationAngle(11 + 4 * random.nextDouble());
+    sim.reset();
+    autoBalance balance = new autoBalance(config, null, period);
+    balance.reset();
+
+    double levelSince = Double.NaN;
+    double firstEngaged = Double.NaN;
+    double overshoot = 0;
+    int ticks = balance.secondsToTicks(kAutoLength);
+    for (int i = 0; i < ticks; i++) {
+      double timestamp = i * period;
+      balance.update(timestamp, sim.getAccelX(), sim.getAccelY(), sim.getAccelZ());
+      double output = scoreFirst ? balance.scoreAndBalance() : balance.autoBalanceRoutine();
+      sim.step(output, period);
+
+      // only the last stretch counts, the station has to stay level until the end of auto
+      if (sim.isEngaged()) {
+        if (Double.isNaN(levelSince)) levelSince = timestamp + period;
+        if (Double.isNaN(firstEngaged) && balance.isBalancing()) firstEngaged = timestamp + period;
+      } else {
+        levelSince = Double.NaN;
+      }
+      if (!Double.isNaN(firstEngaged)) {
+        overshoot = Math.max(overshoot, Math.abs(sim.getStationAngleDegrees()));
+      }
+    }
+    return new Trial(levelSince, sim.getStationAngleDegrees(), firstEngaged,
+        Double.isNaN(firstEngaged) ? Double.NaN : overshoot);
+  }
+
+  /** Run every trial of one configuration, seeds are shared so configurations see the same runs. */
+  public static Result evaluate(AutoBalanceConfig config, boolean scoreFirst, int trials) {
+    return evaluate(config, scoreFirst, trials, kPeriod);
+  }
+
+  /** Same as {@link #evaluate(AutoBalanceConfig, boolean, int)} with a robot loop period in seconds. */
+  public static Result evaluate(AutoBalanceConfig config, boolean scoreFirst, int trials, double period) {
+    Trial[] results = new Trial[trials];
+    for (int i = 0; i < trials; i++) {
+      results[i] = runTrial(config, scoreFirst, i, period);
+    }
+    return new Result(config, results);
+  }
+
+  /**
+   * Print a configuration's results at every period in {@link #kComparePeriods}. The routines time
+   * themselves with timestamps, so the failures should match and the times should only differ by
+   * about a loop.
+   */
+  static void comparePeriods(String label, AutoBalanceConfig config, boolean scoreFirst, int trials) {
+    for (double period : kComparePeriods) {
+      System.out.printf("%s at %.0f ms: %s%n", label, period * 1000,
+          format(evaluate(config, scoreFirst, trials, period)));
+    }
+  }
+
+  /** Random configurations around the current one, the current one is always first. */
+  static List<AutoBalanceConfig> sample(AutoBalanceConfig base, int count, long seed) {
+    Random random = new Random(seed);
+    List<AutoBalanceConfig> configs = new ArrayList<>(count);
+    configs.add(base);
+    for (int i = 1; i < count; i++) {
+      configs.add(base.withBalance(
+          round(between(random, 0.4, 0.9)),
+          round(between(random, 0.1, 0.7)),
+          round(between(random, -88, -76)),
+          round(between(random, -84, -66)),
+          round(between(random, 0.04, 0.5))));
+    }
+    return configs;
+  }
+
+  private static double between(Random random, double min, double max) {
+    return min + (max - min) * random.nextDouble();
+  }
+
+  private static double round(double value) {
+    return Math.round(value * 100) / 100.0;
+  }
+
+  /**
+   * The fixed scenario for comparing final balancing stages: the configuration with the bang-bang
+   * stage and with its PD stage, both balance routines, the same seeds and starting angles for
+   * every run, at every period in {@link #kComparePeriods}. The PD gains were tuned on this same
+   * model, so it shows how the stages compare on the model, not that PD is better on a real station.
+   */
+  static void benchmark(AutoBalanceConfig config, int trials) {
+    AutoBalanceConfig bangBang = config.withBalanceGains(null);
+    AutoBalanceConfig pd = config.balanceGains != null
+        ? config : config.withBalanceGains(BalanceGains.kDefault);
+    System.out.println("benchmark: " + trials + " trials per row, " + pd.balanceGains);
+    for (boolean scoreFirst : new boolean[] {false, true}) {
+      for (double period : kComparePeriods) {
+        for (AutoBalanceConfig stage : new AutoBalanceConfig[] {bangBang, pd}) {
+          Result result = evaluate(stage, scoreFirst, trials, period);
+          System.out.printf("%-15s %-9s %2.0f ms: failures %3.0f%%, engaged after %5.2f s, "
+              + "level for good after %5.2f s, overshoot mean %4.1f worst %4.1f deg%n",
+              scoreFirst ? "Score + Balance" : "Balance", stage == pd ? "PD" : "bang-bang",
+              period * 1000, 100 * result.getFailureRate(), result.meanTimeToEngaged, result.meanTime,
+              result.meanOvershoot, result.worstOvershoot);
+        }
+      }
+    }
+  }
+
+  public static void main(String... args) throws IOException {
+    if (args.length > 0 && args[0].equalsIgnoreCase("benchmark")) {
+      benchmark(AutoBalanceConfig.kDefault, args.length > 1 ? Integer.parseInt(args[1]) : 100);
+      return;
+    }
+    int combinations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int trials = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    boolean scoreFirst = args.length > 2 && args[2].equalsIgnoreCase("scoreAndBalance");
+    Path output = Paths.get(args.length > 3 ? args[3] : "build/autoBalanceTuning.csv");
+
+    List<AutoBalanceConfig> configs = sample(AutoBalanceConfig.kDefault, combinations, 7196);
+    long start = System.nanoTime();
+    List<Result> results = IntStream.range(0, configs.size())
+        .parallel()
+        .mapToObj(i -> evaluate(configs.get(i), scoreFirst, trials))
+        .collect(Collectors.toList());
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    Result current = results.get(0);
+    results.sort(Comparator.comparingDouble(Result::getFailureRate)
+        .thenComparingDouble(result -> Double.isNaN(result.meanTime) ? Double.MAX_VALUE : result.meanTime));
+
+    if (output.getParent() != null) Files.createDirectories(output.getParent());
+    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output))) {
+      writer.println("robotSpeedFast,robotSpeedSlow,onChargeStationDegree,levelDegree,debounceTime,"
+          + "trials,failures,failureRate,meanTimeToBalance,worstTimeToBalance");
+      for (Result result : results) {
+        AutoBalanceConfig config = result.config;
+        writer.println(config.robotSpeedFast + "," + config.robotSpeedSlow + ","
+            + config.onChargeStationDegree + "," + config.levelDegree + "," + config.debounceTime + ","
+            + result.trials + "," + result.failures + "," + result.getFailureRate() + ","
+            + result.meanTime + "," + result.worstTime);
+      }
+    }
+
+    System.out.printf("%d combinations x %d trials (%s) in %.1f s on %d cores, %.0f autos/s%n",
+        configs.size(), trials, scoreFirst ? "Score + Balance" : "Balance", seconds,
+        Runtime.getRuntime().availableProcessors(), configs.size() * trials / seconds);
+    System.out.println("current: " + format(current));
+    for (int i = 0; i < Math.min(kPrintCount, results.size()); i++) {
+      System.out.println((i + 1) + ": " + format(results.get(i)));
+    }
+    comparePeriods("current", current.config, scoreFirst, trials);
+    comparePeriods("best", results.get(0).config, scoreFirst, trials);
+    System.out.println("all results written to " + output.toAbsolutePath());
+  }
+
+  private static String format(Result result) {
+    return String.format("%s -> failures %.0f%%, time to balance mean %.2f s, worst %.2f s",
+        result.config, 100 * result.getFailureRate(), result.meanTime, result.worstTime);
+  }
+}
@@ -0,0 +1,48 @@
+package frc.robot;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Every autonomous routine as a command, built once at startup. The dashboard chooser holds the
+ * commands themselves, so autonomousInit only has to read the selection once and schedule it.
+ * Nothing is looked up or compared while the routine runs.
+ */
+public class AutoRegistry {
+  public static final String kScoreAuto = "Score Auto";
+  public static final String kScoreAndDriveAuto = "Score + Drive Auto";
+  public static final String kScoreAndBalanceAuto = "Score + Balance Auto";
+  public static final String kBalanceAuto = "Balance Auto";
+  /** SmartDashboard key of the chooser. */
+  public static final String kChooserKey = "Auto mode:";
+
+  private final DashboardChooser<Command> m_chooser = new DashboardChooser<>();
+  private final autoBalance m_autoBalance;
+  private final Drivetrain m_drivetrain;
+
+  public AutoRegistry(autoBalance autoBalance, Drivetrain drivetrain) {
+    m_autoBalance = autoBalance;
+    m_drivetrain = drivetrain;
+
+    m_chooser.setDefaultOption(kScoreAuto, drive(kScoreAuto, autoBalance::score));
+    m_chooser.addOption(kScoreAndDriveAuto, drive(kScoreAndDriveAuto, autoBalance::scoreAndDrive));
+    m_chooser.addOption(kScoreAndBalanceAuto, drive(kScoreAndBalanceAuto, autoBalance::scoreAndBalance));
+    m_chooser.addOption(kBalanceAuto, drive(kBalanceAuto, autoBalance::autoBalanceRoutine));
+    m_chooser.publish(kChooserKey);
+  }
+
+  // restart the routines, then drive straight at the routine's output every loop until cancelled.
+  // The routines output 0 once they are done, which keeps the drive's motor safety fed.
+  private Command drive(String name, DoubleSupplier routine) {
+    return Commands.run(() -> m_drivetrain.arcadeDrive(routine.getAsDouble(), 0), m_drivetrain)
+        .beforeStarting(m_autoBalance::reset)
+        .finallyDo(interrupted -> m_drivetrain.stop())
+        .withName(name);
+  }
+
+  /** @return the command selected on the dashboard, read once when autonomous starts */
+  public Command getSelected() {
+    return m_chooser.getSelected();
+  }
+}
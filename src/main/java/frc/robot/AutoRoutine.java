@@ -0,0 +1,155 @@
+package frc.robot;
+
+//Steps through a fixed table of AutoSegments. Each call to calculate looks at the current
+//segment only, so a tick costs the same no matter how long the routine is. Segment times are
+//measured with the timestamps passed in rather than by counting loops, so an overrun loop does
+//not stretch a timed segment. Once the last segment ends the routine outputs 0.
+public class AutoRoutine {
+    private final String name;
+    private final AutoSegment[] segments;
+    private int index;
+    private boolean started;
+    private double segmentStart;
+    private double lastTimestamp;
+    private double conditionTime;
+    private double lastOutput;
+    //balancePD only, see balance
+    private boolean holding;
+    private boolean tipped;
+    private double driveOutput;
+    private double accelTilt;
+    private double accelTiltRate;
+
+    public AutoRoutine(String name, AutoSegment... segments){
+        if (segments.length == 0)
+            throw new IllegalArgumentException("A routine needs at least one segment.");
+        this.name = name;
+        this.segments = segments.clone();
+        reset();
+    }
+
+    //start over from the first segment, timing starts on the next call to calculate
+    public void reset(){
+        index = 0;
+        started = false;
+        conditionTime = 0;
+        lastOutput = 0;
+    }
+
+    //returns a value from -1.0 to 1.0, which left and right motors should be set to.
+    //timestamp is in seconds, tilt is the robot's tilt in degrees for this loop
+    public double calculate(double timestamp, double tilt){
+        return calculate(timestamp, tilt, 0);
+    }
+
+    //same as above with the tilt rate in degrees per second, which balancePD segments need
+    public double calculate(double timestamp, double tilt, double tiltRate){
+        if(!started){
+            started = true;
+            enterSegment(timestamp);
+        }
+        if(index >= segments.length){
+            lastOutput = 0;
+            return 0;
+        }
+
+        AutoSegment segment = segments[index];
+        double dt = timestamp - lastTimestamp;
+        lastTimestamp = timestamp;
+
+        boolean done = false;
+        if(segment.endCondition == AutoSegment.kTimed){
+            done = timestamp - segmentStart >= segment.time;
+        } else if(segment.endCondition != AutoSegment.kHold){
+            if(segment.conditionMet(tilt)){
+                conditionTime += dt;
+            }
+            done = conditionTime > segment.time;
+        }
+
+        if(done){
+            index++;
+            enterSegment(timestamp);
+            if(index >= segments.length){
+                lastOutput = 0;
+                return 0;
+            }
+            segment = segments[index];
+        }
+        if(segment.gains != null){
+            lastOutput = balance(segment, tilt, tiltRate, dt);
+        } else {
+            lastOutput = segment.output(tilt);
+        }
+        return lastOutput;
+    }
+
+    //a balancePD segment, conditionTime is how long the station has been off level while holding
+    private double balance(AutoSegment segment, double tilt, double tiltRate, double dt){
+        BalanceGains gains = segment.gains;
+        if(gains.driveTimeConstant > 0 && dt > 0){
+            //take out the tilt the accelerometer reads from the robot speeding up or slowing down,
+            //driveOutput follows the output the way the drive's speed is modelled to.
+            //Low pass filtered with the tilt's time constant so the two line up
+            double accelTiltNow = gains.accelerationTilt(lastOutput - driveOutput);
+            driveOutput += (lastOutput - driveOutput) * Math.min(1, dt / gains.driveTimeConstant);
+            double alpha = segment.tiltFilterTime > 0 ? dt / (segment.tiltFilterTime + dt) : 1;
+            double filtered = accelTilt + alpha * (accelTiltNow - accelTilt);
+            accelTiltRate += alpha * ((filtered - accelTilt) / dt - accelTiltRate);
+            accelTilt = filtered;
+            tilt -= accelTilt;
+            tiltRate -= accelTiltRate;
+        }
+
+        //the segment can start with the robot still flat at the foot of the ramp, only hold once the
+        //station has been seen off level
+        tipped |= gains.isOffLevel(tilt);
+        if(holding){
+            //the accelerometer feels the robot stopping as a tilt for a moment, so the hold
+            //only ends once the station has been off level for releaseTime
+            conditionTime = gains.isOffLevel(tilt) ? conditionTime + dt : 0;
+            holding = conditionTime < gains.releaseTime;
+        } else {
+            holding = tipped && gains.isLevel(tilt);
+            conditionTime = 0;
+        }
+        double target = holding ? 0 : gains.output(tilt, tiltRate);
+        double step = gains.maxOutputRate * dt;
+        return Math.max(lastOutput - step, Math.min(lastOutput + step, target));
+    }
+
+    private void enterSegment(double timestamp){
+        segmentStart = timestamp;
+        lastTimestamp = timestamp;
+        conditionTime = 0;
+        holding = false;
+        tipped = false;
+        //the robot has been driving at the last output, assume it is up to speed
+        driveOutput = lastOutput;
+        accelTilt = 0;
+        accelTiltRate = 0;
+    }
+
+    //true while a balancePD segment is holding still on a level station
+    public boolean isHolding(){
+        return holding;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    //index of the segment being run, equal to the number of segments once finished
+    public int getSegmentIndex(){
+        return index;
+    }
+
+    //true while running the last segment, the final balancing stage in the balance routines
+    public boolean isOnLastSegment(){
+        return index == segments.length - 1;
+    }
+
+    public boolean isFinished(){
+        return index >= segments.length;
+    }
+}
@@ -0,0 +1,95 @@
+package frc.robot;
+
+//One step of an autonomous routine, the output to drive at and the condition that ends the step.
+//Segments are immutable and built once when the robot starts, AutoRoutine steps through them.
+public final class AutoSegment {
+    static final int kTimed = 0;
+    static final int kTiltAbove = 1;
+    static final int kTiltBelow = 2;
+    static final int kLevel = 3;
+    static final int kHold = 4;
+
+    final int endCondition;
+    final double threshold;
+    final double time;
+    final double speed;
+    final boolean balance;
+    //only for balancePD segments, the gains and the AttitudeEstimator's time constant in seconds
+    final BalanceGains gains;
+    final double tiltFilterTime;
+
+    private AutoSegment(int endCondition, double threshold, double time, double speed, boolean balance){
+        this(endCondition, threshold, time, speed, balance, null, 0);
+    }
+
+    private AutoSegment(int endCondition, double threshold, double time, double speed, boolean balance,
+            BalanceGains gains, double tiltFilterTime){
+        if (time < 0 || tiltFilterTime < 0)
+            throw new IllegalArgumentException("Time must be positive.");
+        this.endCondition = endCondition;
+        this.threshold = threshold;
+        this.time = time;
+        this.speed = speed;
+        this.balance = balance;
+        this.gains = gains;
+        this.tiltFilterTime = tiltFilterTime;
+    }
+
+    //drive at speed for a fixed number of seconds
+    public static AutoSegment drive(double speed, double seconds){
+        return new AutoSegment(kTimed, 0, seconds, speed, false);
+    }
+
+    //drive at speed until the tilt has been above degrees for debounceTime seconds
+    public static AutoSegment driveUntilTiltAbove(double speed, double degrees, double debounceTime){
+        return new AutoSegment(kTiltAbove, degrees, debounceTime, speed, false);
+    }
+
+    //drive at speed until the tilt has been below degrees for debounceTime seconds
+    public static AutoSegment driveUntilTiltBelow(double speed, double degrees, double debounceTime){
+        return new AutoSegment(kTiltBelow, degrees, debounceTime, speed, false);
+    }
+
+    //drive +speed while tilt >= levelDegree, -speed while tilt <= -levelDegree, otherwise stop.
+    //Ends once |tilt| <= levelDegree/2 for debounceTime seconds
+    public static AutoSegment balance(double speed, double levelDegree, double debounceTime){
+        return new AutoSegment(kLevel, levelDegree, debounceTime, speed, true);
+    }
+
+    //drive towards level with a PD loop on the tilt, then hold still while the station stays level,
+    //see BalanceGains. Never ends, so it keeps the station level until the end of auto.
+    //tiltFilterTime is the AttitudeEstimator's time constant, the robot's own acceleration is
+    //filtered the same way before it is taken out of the tilt
+    public static AutoSegment balancePD(BalanceGains gains, double tiltFilterTime){
+        return new AutoSegment(kHold, 0, 0, gains.maxOutput, true, gains, tiltFilterTime);
+    }
+
+    //true if the sensor condition that ends this segment holds for this tilt
+    boolean conditionMet(double tilt){
+        switch (endCondition){
+            case kTiltAbove:
+                return tilt > threshold;
+            case kTiltBelow:
+                return tilt < threshold;
+            case kLevel:
+                return Math.abs(tilt) <= threshold/2;
+            case kTimed:
+            case kHold:
+            default:
+                return false;
+        }
+    }
+
+    double output(double tilt){
+        if(!balance){
+            return speed;
+        }
+        if(tilt >= threshold){
+            return speed;
+        } else if(tilt <= -threshold){
+            return -speed;
+        } else {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package frc.robot;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the parts of startup the robot can drive without on a thread of their own, one after
+ * another, so the first robot loop does not wait for them. {@link #isReady(int)} is the barrier
+ * for one task: the robot thread must not touch anything a task set up until it returns true for
+ * that task. It is a volatile read, so everything the task wrote is visible to the thread that sees
+ * it return true.
+ *
+ * <p>If a task throws, the error goes to the driver station and the other tasks still run and
+ * become ready on their own. Only what the failed task set up stays unused, the robot keeps running
+ * without it instead of crashing.
+ */
+public class BackgroundInit {
+  private final String m_name;
+  private final Runnable m_onReady;
+  private final List<String> m_taskNames = new ArrayList<>();
+  private final List<Runnable> m_tasks = new ArrayList<>();
+  private final CountDownLatch m_done = new CountDownLatch(1);
+  private Thread m_thread;
+  // bit i is set once task i has finished without throwing
+  private volatile int m_readyTasks;
+  private volatile boolean m_ready;
+  private volatile boolean m_failed;
+
+  /**
+   * @param name name of the thread
+   * @param onReady run on the background thread once every task has finished without throwing
+   */
+  public BackgroundInit(String name, Runnable onReady) {
+    m_name = name;
+    m_onReady = onReady;
+  }
+
+  /**
+   * Add a task, tasks run in the order they were added.
+   *
+   * @return the task's number, for {@link #isReady(int)}
+   */
+  public int add(String name, Runnable task) {
+    if (m_thread != null)
+      throw new IllegalStateException("Tasks must be added before start.");
+    if (m_tasks.size() >= Integer.SIZE)
+      throw new IllegalStateException("Too many tasks.");
+    m_taskNames.add(name);
+    m_tasks.add(task);
+    return m_tasks.size() - 1;
+  }
+
+  public void start() {
+    if (m_thread != null) return;
+    m_thread = new Thread(this::run, m_name);
+    m_thread.setDaemon(true);
+    m_thread.start();
+  }
+
+  private void run() {
+    for (int i = 0; i < m_tasks.size(); i++) {
+      try {
+        m_tasks.get(i).run();
+        m_readyTasks |= 1 << i;
+      } catch (RuntimeException ex) {
+        m_failed = true;
+        DriverStation.reportError(m_name + ": " + m_taskNames.get(i) + " failed, " + ex, ex.getStackTrace());
+      }
+    }
+    if (!m_failed) {
+      m_ready = true;
+      m_onReady.run();
+    }
+    m_done.countDown();
+  }
+
+  /** @return true once the task has finished without throwing */
+  public boolean isReady(int task) {
+    return (m_readyTasks & (1 << task)) != 0;
+  }
+
+  /** @return true once every task has finished without throwing */
+  public boolean isReady() {
+    return m_ready;
+  }
+
+  /** @return true if a task threw, that task and the initializer as a whole will never be ready */
+  public boolean hasFailed() {
+    return m_failed;
+  }
+
+  /**
+   * Wait for the tasks to finish, for tools that need the whole robot from the first loop.
+   *
+   * @return whether the initializer is ready
+   */
+  public boolean await(double timeoutSeconds) {
+    try {
+      m_done.await((long) (timeoutSeconds * 1e9), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    return m_ready;
+  }
+}
@@ -0,0 +1,109 @@
+package frc.robot;
+
+//Gains for the proportional-derivative charge station balance (AutoSegment.balancePD).
+//Immutable like AutoBalanceConfig. The error is the robot's pitch, its tilt minus the tilt it
+//reads sitting flat, and the derivative is the filtered tilt rate from AttitudeEstimator rather
+//than the difference of two errors, so a new segment does not start with a kick.
+//
+//There is no gyro, the tilt comes from the accelerometer, which also feels the robot speed up and
+//slow down: 1 m/s^2 reads as almost 6 degrees. Left in, the loop chases its own acceleration, so
+//the acceleration the drive model expects from the outputs sent is taken back out, and the output
+//is slew limited to keep what the model gets wrong small.
+//
+//The defaults are only tuned against ChargeStationSim, not on a real station: the level tilt is a
+//guess, and the drive model is the one the simulation uses. So AutoBalanceConfig.kDefault still
+//runs the bang-bang stage until these are checked on the robot.
+public final class BalanceGains {
+    private static final double kGravity = 9.81;
+
+    //The rio is not mounted flat, robot pitch shows up in the accelerometer tilt offset by about
+    //this many degrees. Chosen so the autoBalance thresholds read the way their comments describe,
+    //not measured: check it against the "Tilt: " reading of the real robot sitting flat and set
+    //balance.levelTilt in the config. ChargeStationSim mounts its simulated rio the same way
+    public static final double kLevelTilt = -84;
+
+    //The drive model defaults copy ChargeStationSim's drive, measure them on the robot too
+    public static final BalanceGains kDefault = new BalanceGains(
+        kLevelTilt, 0.0105, 0.0135, 0.4, 9.0, 0.16, 2.8, 0.55, 0.08, 3.5, 0.2);
+
+    //Tilt the rio reads with the robot flat, see kLevelTilt
+    public final double levelTilt;
+
+    //Output per degree of pitch, positive pitch (nose up) drives forward
+    public final double kP;
+
+    //Output per degree per second of tilt rate. The station tips at a rate proportional to how
+    //far the robot is past its pivot, so this term is what walks the robot back to the middle
+    public final double kD;
+
+    //Largest output while the station is steep
+    public final double maxOutput;
+
+    //Within this many degrees of level the output is limited to nearLevelOutput, so the robot
+    //creeps over the pivot instead of driving the station past level
+    public final double nearLevelDegrees;
+    public final double nearLevelOutput;
+
+    //Largest change in output per second
+    public final double maxOutputRate;
+
+    //Stop driving once the pitch is within holdDegrees. The robot holds still until the pitch has
+    //been beyond twice holdDegrees for releaseTime seconds
+    public final double holdDegrees;
+    public final double releaseTime;
+
+    //Drive model for taking the robot's own acceleration out of the tilt: full output reaches
+    //driveMaxSpeed (m/s) with a first order lag of driveTimeConstant seconds. 0 turns it off
+    public final double driveMaxSpeed;
+    public final double driveTimeConstant;
+
+    public BalanceGains(double levelTilt, double kP, double kD, double maxOutput, double nearLevelDegrees,
+            double nearLevelOutput, double maxOutputRate, double holdDegrees, double releaseTime,
+            double driveMaxSpeed, double driveTimeConstant){
+        if (maxOutput < 0 || nearLevelOutput < 0 || maxOutputRate <= 0)
+            throw new IllegalArgumentException("Output limits must be positive.");
+        this.levelTilt = levelTilt;
+        this.kP = kP;
+        this.kD = kD;
+        this.maxOutput = maxOutput;
+        this.nearLevelDegrees = nearLevelDegrees;
+        this.nearLevelOutput = nearLevelOutput;
+        this.maxOutputRate = maxOutputRate;
+        this.holdDegrees = holdDegrees;
+        this.releaseTime = releaseTime;
+        this.driveMaxSpeed = driveMaxSpeed;
+        this.driveTimeConstant = driveTimeConstant;
+    }
+
+    //drive output for this tilt (degrees) and tilt rate (degrees per second), before the hold
+    //and the slew limit
+    double output(double tilt, double tiltRate){
+        double pitch = tilt - levelTilt;
+        double limit = Math.abs(pitch) <= nearLevelDegrees ? nearLevelOutput : maxOutput;
+        double output = kP * pitch + kD * tiltRate;
+        return Math.max(-limit, Math.min(limit, output));
+    }
+
+    //true if the station is level enough to start holding
+    boolean isLevel(double tilt){
+        return Math.abs(tilt - levelTilt) <= holdDegrees;
+    }
+
+    //true if the station is far enough off level to count towards releasing the hold
+    boolean isOffLevel(double tilt){
+        return Math.abs(tilt - levelTilt) > 2 * holdDegrees;
+    }
+
+    //tilt in degrees the accelerometer reads while the drive is still outputBehind short of the
+    //speed its output asks for
+    double accelerationTilt(double outputBehind){
+        double acceleration = driveMaxSpeed * outputBehind / driveTimeConstant;
+        return Math.toDegrees(Math.atan(acceleration / kGravity));
+    }
+
+    @Override
+    public String toString(){
+        return "kP=" + kP + " kD=" + kD + " max=" + maxOutput + " nearLevel=" + nearLevelOutput
+            + "@" + nearLevelDegrees + " slew=" + maxOutputRate + " hold=" + holdDegrees;
+    }
+}
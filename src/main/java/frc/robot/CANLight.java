@@ -1,5 +1,7 @@
 package frc.robot;
 
+import edu.wpi.first.wpilibj.DriverStation;
+
 public class CANLight {
     /**
      * @return The version of this library in the format <code>major.minor
@@ -10,6 +12,10 @@ public class CANLight {
     }
     
 	private final int m_handle;
+	private final CANLightCommandQueue m_queue;
+	private final DeviceMonitor.Device m_device;
+	private final DeviceMonitor.Call m_commandCall;
+	private final DeviceMonitor.Call m_batteryCall;
 	
     /**
      * An instance of this object represents a single CANLight device. Multiple
@@ -38,13 +44,113 @@ public class CANLight {
      * unique ID for each device.
      */
 	public CANLight(int deviceNumber) {
+        this(deviceNumber, 0);
+	}
+    
+    /**
+     * Construct a CANLight that can send its commands from a background
+     * thread. With a queue depth above 0, the display and register methods
+     * return immediately and the JNI call is made by a worker thread owned by
+     * this instance. Consecutive display commands that have not been sent yet
+     * are merged so only the latest goes out, and a display command that
+     * matches what the CANLight is already showing is not sent at all.
+     * Register writes are always sent, in order. If the queue is full the new
+     * command is dropped and counted in {@link #getDroppedCommandCount()}.
+     * <p>
+     * The getters (device name, versions, battery voltage) are always
+     * blocking.
+     * 
+     * @param deviceNumber An integer between 1 and 60 (inclusive) for the ID of
+     * this CANLight, see {@link #CANLight(int)}.
+     * @param queueDepth The number of commands that can wait to be sent, or 0
+     * to make every call block until it has been sent, like
+     * {@link #CANLight(int)}.
+     */
+	public CANLight(int deviceNumber, int queueDepth) {
+        this(deviceNumber, queueDepth, new DeviceMonitor.Device("CANLight (" + deviceNumber + ")"));
+	}
+    
+    /**
+     * Construct a CANLight whose JNI calls are timed into a device of a
+     * {@link DeviceMonitor}. The display and register commands are recorded
+     * as "command" (on the worker thread with a queue), the battery voltage
+     * as "getBatteryVoltage", where a reading of 0 counts as an error.
+     * 
+     * @param deviceNumber see {@link #CANLight(int)}.
+     * @param queueDepth see {@link #CANLight(int, int)}.
+     * @param device the device to record into, from
+     * {@link DeviceMonitor#addDevice(String)}.
+     */
+	public CANLight(int deviceNumber, int queueDepth, DeviceMonitor.Device device) {
         if (deviceNumber > 60 || deviceNumber < 1)
             throw new IndexOutOfBoundsException("Device number must be between 1 and 60.");
+        if (queueDepth < 0)
+            throw new IllegalArgumentException("Queue depth must not be negative.");
+        m_device = device;
+        // a blocking command waits for the CAN frame to go out, a few ms is normal
+        m_commandCall = device.addCall("command", 5);
+        m_batteryCall = device.addCall("getBatteryVoltage", 5);
 		m_handle = CANLightJNI.Constructor(deviceNumber);
+		m_queue = queueDepth > 0 ? new CANLightCommandQueue(m_handle, deviceNumber, queueDepth, m_commandCall) : null;
 	}
     public void free() {
+        if (m_queue != null && !m_queue.close()) {
+            // the worker is still sending with the handle, leaking it is better than a crash
+            DriverStation.reportWarning(m_device.getName() + ": command thread did not stop, not freed", false);
+            return;
+        }
 		CANLightJNI.Destructor(m_handle);
 	}
+    
+    /**
+     * @return True if commands are sent from a background thread, see
+     * {@link #CANLight(int, int)}.
+     */
+    public boolean isNonBlocking() {
+        return m_queue != null;
+    }
+    /**
+     * @return The number of commands waiting to be sent, always 0 for a
+     * blocking CANLight.
+     */
+    public int getQueueDepth() {
+        return m_queue != null ? m_queue.getQueueDepth() : 0;
+    }
+    /**
+     * @return The device the JNI calls are timed into, its health says whether
+     * this CANLight answers.
+     */
+    public DeviceMonitor.Device getMonitoredDevice() {
+        return m_device;
+    }
+    /**
+     * @return The time in milliseconds between the most recently sent command
+     * being issued and its JNI call returning, 0 for a blocking CANLight.
+     */
+    public double getLastSendLatency() {
+        return m_queue != null ? m_queue.getLastLatencyMillis() : 0;
+    }
+    /**
+     * @return The longest send latency seen, in milliseconds, see
+     * {@link #getLastSendLatency()}.
+     */
+    public double getMaxSendLatency() {
+        return m_queue != null ? m_queue.getMaxLatencyMillis() : 0;
+    }
+    /**
+     * @return The number of commands that were merged into a later display
+     * command or skipped as a repeat of the current display, and so were never
+     * sent.
+     */
+    public long getSkippedCommandCount() {
+        return m_queue != null ? m_queue.getCoalescedCount() + m_queue.getRedundantCount() : 0;
+    }
+    /**
+     * @return The number of commands dropped because the queue was full.
+     */
+    public long getDroppedCommandCount() {
+        return m_queue != null ? m_queue.getDroppedCount() : 0;
+    }
 	
     /**
      * @return The device ID provided when constructing this CANLight instance.
@@ -100,12 +206,21 @@ public class CANLight {
      * station.
      * 
      * @param seconds The number of seconds to blink.
+     * 
+     * @return True if the command was sent or queued, false if the queue was full
+     * and it was dropped.
      */
-	public void blinkLED(int seconds) {
+	public boolean blinkLED(int seconds) {
         if (seconds <= 0)
             throw new IllegalArgumentException("Seconds must be a positive integer.");
         if (seconds > 255) seconds = 255;
+        if (m_queue != null) {
+            return m_queue.offer(CANLightCommandQueue.kBlinkLED, seconds, 0, 0, 0, 0);
+        }
+		long start = System.nanoTime();
 		CANLightJNI.BlinkLED(m_handle, seconds);
+		m_commandCall.record(System.nanoTime() - start);
+		return true;
 	}
 	
     /**
@@ -119,8 +234,11 @@ public class CANLight {
      * component of the color to show.
      * @param blue An integer between 0 and 255 (inclusive) for the blue
      * component of the color to show.
+     * 
+     * @return True if the command was sent or queued, false if the queue was full
+     * and it was dropped.
      */
-	public void showRGB(int red, int green, int blue) {
+	public boolean showRGB(int red, int green, int blue) {
         if (red > 255) red = 255;
         if (green > 255) green = 255;
         if (blue > 255) blue = 255;
@@ -128,7 +246,13 @@ public class CANLight {
         if (green < 0) green = 0;
         if (blue < 0) blue = 0;
         
+        if (m_queue != null) {
+            return m_queue.offer(CANLightCommandQueue.kShowRGB, red, green, blue, 0, 0);
+        }
+		long start = System.nanoTime();
 		CANLightJNI.ShowRGB(m_handle, red, green, blue);
+		m_commandCall.record(System.nanoTime() - start);
+		return true;
 	}
     
     /**
@@ -150,8 +274,11 @@ public class CANLight {
      * @param red An integer between 0 and 255 (inclusive).
      * @param green An integer between 0 and 255 (inclusive).
      * @param blue An integer between 0 and 255 (inclusive).
+     * 
+     * @return True if the command was sent or queued, false if the queue was full
+     * and it was dropped.
      */
-	public void writeRegister(int index, double time, int red, int green, int blue) {
+	public boolean writeRegister(int index, double time, int red, int green, int blue) {
         if (index > 7 || index < 0)
             throw new IndexOutOfBoundsException("Index must be between 0 and 7.");
         if (time < 0)
@@ -165,15 +292,30 @@ public class CANLight {
         if (green < 0) green = 0;
         if (blue < 0) blue = 0;
         
+        if (m_queue != null) {
+            return m_queue.offer(CANLightCommandQueue.kWriteRegister, index, centiseconds, red, green, blue);
+        }
+		long start = System.nanoTime();
 		CANLightJNI.WriteRegister(m_handle, index, centiseconds, red, green, blue);
+		m_commandCall.record(System.nanoTime() - start);
+		return true;
 	}
     
     /**
      * Restore the registers to power on default. These are, in order, from
      * index 0 to 7: off, red, green, blue, orange, teal, purple, white.
+     * 
+     * @return True if the command was sent or queued, false if the queue was full
+     * and it was dropped.
      */
-	public void reset() {
+	public boolean reset() {
+        if (m_queue != null) {
+            return m_queue.offer(CANLightCommandQueue.kReset, 0, 0, 0, 0, 0);
+        }
+        long start = System.nanoTime();
         CANLightJNI.Reset(m_handle);
+        m_commandCall.record(System.nanoTime() - start);
+        return true;
 	}
     
     /**
@@ -182,11 +324,20 @@ public class CANLight {
      * 
      * @param index An integer between 0 and 7 (inclusive) for which register to
      * show.
+     * 
+     * @return True if the command was sent or queued, false if the queue was full
+     * and it was dropped.
      */
-	public void showRegister(int index) {
+	public boolean showRegister(int index) {
         if (index > 7 || index < 0)
             throw new IndexOutOfBoundsException("Index must be between 0 and 7.");
+        if (m_queue != null) {
+            return m_queue.offer(CANLightCommandQueue.kShowRegister, index, 0, 0, 0, 0);
+        }
+		long start = System.nanoTime();
 		CANLightJNI.ShowRegister(m_handle, index);
+		m_commandCall.record(System.nanoTime() - start);
+		return true;
 	}
     
     /**
@@ -195,11 +346,20 @@ public class CANLight {
      * 
      * @param index An integer between 0 and 7 (inclusive) for which register to
      * show.
+     * 
+     * @return True if the command was sent or queued, false if the queue was full
+     * and it was dropped.
      */
-	public void flash(int index) {
+	public boolean flash(int index) {
         if (index > 7 || index < 0)
             throw new IndexOutOfBoundsException("Index must be between 0 and 7.");
+        if (m_queue != null) {
+            return m_queue.offer(CANLightCommandQueue.kFlash, index, 0, 0, 0, 0);
+        }
+		long start = System.nanoTime();
 		CANLightJNI.Flash(m_handle, index);
+		m_commandCall.record(System.nanoTime() - start);
+		return true;
 	}
     
     /**
@@ -209,8 +369,11 @@ public class CANLight {
      * register to begin the sequence at.
      * @param toIndex An integer between 0 and 7 (inclusive) for which register
      * to use as the last color in the sequence.
+     * 
+     * @return True if the command was sent or queued, false if the queue was full
+     * and it was dropped.
      */
-	public void cycle(int fromIndex, int toIndex) {
+	public boolean cycle(int fromIndex, int toIndex) {
         if (fromIndex > 7 || fromIndex < 0 || toIndex > 7 || toIndex < 0)
             throw new IndexOutOfBoundsException("Indices must be between 0 and 7.");
         if (fromIndex > toIndex) { // swap
@@ -218,7 +381,13 @@ public class CANLight {
             fromIndex = toIndex;
             toIndex = temp;
         }
+        if (m_queue != null) {
+            return m_queue.offer(CANLightCommandQueue.kCycle, fromIndex, toIndex, 0, 0, 0);
+        }
+		long start = System.nanoTime();
 		CANLightJNI.Cycle(m_handle, fromIndex, toIndex);
+		m_commandCall.record(System.nanoTime() - start);
+		return true;
 	}
     
     /**
@@ -231,8 +400,11 @@ public class CANLight {
      * register to begin at.
      * @param endIndex An integer between 0 and 7 (inclusive) for which register
      * to end at.
+     * 
+     * @return True if the command was sent or queued, false if the queue was full
+     * and it was dropped.
      */
-	public void fade(int startIndex, int endIndex) {
+	public boolean fade(int startIndex, int endIndex) {
         if (startIndex > 7 || startIndex < 0 || endIndex > 7 || endIndex < 0)
             throw new IndexOutOfBoundsException("Indices must be between 0 and 7.");
         if (startIndex > endIndex) { // swap
@@ -240,7 +412,13 @@ public class CANLight {
             startIndex = endIndex;
             endIndex = temp;
         }
+        if (m_queue != null) {
+            return m_queue.offer(CANLightCommandQueue.kFade, startIndex, endIndex, 0, 0, 0);
+        }
+        long start = System.nanoTime();
         CANLightJNI.Fade(m_handle, startIndex, endIndex);
+        m_commandCall.record(System.nanoTime() - start);
+        return true;
 	}
     
     /**
@@ -250,6 +428,14 @@ public class CANLight {
      * on mindsensors.com.
      */
     public double getBatteryVoltage() {
-        return CANLightJNI.GetBatteryVoltage(m_handle);
+        long start = System.nanoTime();
+        double voltage = CANLightJNI.GetBatteryVoltage(m_handle);
+        long nanos = System.nanoTime() - start;
+        if (voltage == 0.0) {
+            m_batteryCall.recordError(nanos);
+        } else {
+            m_batteryCall.record(nanos);
+        }
+        return voltage;
     }
 }
@@ -0,0 +1,256 @@
+package frc.robot;
+
+/**
+ * Bounded queue of CANLight commands drained by a single worker thread, so the thread issuing a
+ * command never waits on the JNI call or the CAN bus. Commands are stored as primitives in
+ * preallocated arrays and nothing is allocated per command.
+ * <p>
+ * Display commands (showRGB, showRegister, flash, cycle, fade) replace each other: if the last
+ * queued command is a display command that has not been sent yet, a new one overwrites it, since
+ * only the latest would ever be visible. A display command identical to the current display state
+ * is dropped. Register writes and resets are always sent in order, and clear the display state so
+ * that showing a rewritten register is not mistaken for a repeat.
+ */
+class CANLightCommandQueue {
+    static final int kNone = 0;
+    static final int kBlinkLED = 1;
+    static final int kShowRGB = 2;
+    static final int kWriteRegister = 3;
+    static final int kReset = 4;
+    static final int kShowRegister = 5;
+    static final int kFlash = 6;
+    static final int kCycle = 7;
+    static final int kFade = 8;
+
+    private final int m_handle;
+    private final DeviceMonitor.Call m_sendCall;
+    private final int m_capacity;
+    private final int[] m_kind;
+    private final int[] m_a;
+    private final int[] m_b;
+    private final int[] m_c;
+    private final int[] m_d;
+    private final int[] m_e;
+    private final long[] m_queuedAt;
+    private int m_head;
+    private int m_size;
+    private boolean m_running = true;
+    private final Object m_lock = new Object();
+    private final Thread m_thread;
+
+    // last display command accepted into the queue
+    private int m_displayKind = kNone;
+    private int m_displayA;
+    private int m_displayB;
+    private int m_displayC;
+
+    private long m_sent;
+    private long m_coalesced;
+    private long m_redundant;
+    private long m_dropped;
+    private volatile long m_lastLatencyNanos;
+    private volatile long m_maxLatencyNanos;
+
+    // sendCall records how long each JNI call takes, without the time spent waiting in the queue
+    CANLightCommandQueue(int handle, int deviceNumber, int capacity, DeviceMonitor.Call sendCall) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Queue depth must be at least 1.");
+        m_handle = handle;
+        m_sendCall = sendCall;
+        m_capacity = capacity;
+        m_kind = new int[capacity];
+        m_a = new int[capacity];
+        m_b = new int[capacity];
+        m_c = new int[capacity];
+        m_d = new int[capacity];
+        m_e = new int[capacity];
+        m_queuedAt = new long[capacity];
+        m_thread = new Thread(this::run, "CANLight " + deviceNumber);
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    private static boolean isDisplay(int kind) {
+        return kind == kShowRGB || kind == kShowRegister || kind == kFlash || kind == kCycle || kind == kFade;
+    }
+
+    /**
+     * @return True if the command is queued, replaced a queued display command or is already what
+     * the display will show. False if it was dropped because the queue is full or closed.
+     */
+    boolean offer(int kind, int a, int b, int c, int d, int e) {
+        long now = System.nanoTime();
+        synchronized (m_lock) {
+            if (!m_running) return false;
+            boolean display = isDisplay(kind);
+            if (display) {
+                if (kind == m_displayKind && a == m_displayA && b == m_displayB && c == m_displayC) {
+                    m_redundant++;
+                    return true;
+                }
+                int tail = (m_head + m_size - 1) % m_capacity;
+                if (m_size > 0 && isDisplay(m_kind[tail])) {
+                    // the queued display command was never shown, replace it but keep its queue time
+                    set(tail, kind, a, b, c, d, e, m_queuedAt[tail]);
+                    setDisplay(kind, a, b, c);
+                    m_coalesced++;
+                    return true;
+                }
+            }
+            if (m_size == m_capacity) {
+                m_dropped++;
+                return false;
+            }
+            set((m_head + m_size) % m_capacity, kind, a, b, c, d, e, now);
+            m_size++;
+            if (display) {
+                setDisplay(kind, a, b, c);
+            } else if (kind == kWriteRegister || kind == kReset) {
+                m_displayKind = kNone;
+            }
+            m_lock.notify();
+            return true;
+        }
+    }
+
+    private void set(int i, int kind, int a, int b, int c, int d, int e, long queuedAt) {
+        m_kind[i] = kind;
+        m_a[i] = a;
+        m_b[i] = b;
+        m_c[i] = c;
+        m_d[i] = d;
+        m_e[i] = e;
+        m_queuedAt[i] = queuedAt;
+    }
+
+    private void setDisplay(int kind, int a, int b, int c) {
+        m_displayKind = kind;
+        m_displayA = a;
+        m_displayB = b;
+        m_displayC = c;
+    }
+
+    private void run() {
+        while (true) {
+            int kind, a, b, c, d, e;
+            long queuedAt;
+            synchronized (m_lock) {
+                while (m_size == 0 && m_running) {
+                    try {
+                        m_lock.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (m_size == 0) return;
+                kind = m_kind[m_head];
+                a = m_a[m_head];
+                b = m_b[m_head];
+                c = m_c[m_head];
+                d = m_d[m_head];
+                e = m_e[m_head];
+                queuedAt = m_queuedAt[m_head];
+                m_head = (m_head + 1) % m_capacity;
+                m_size--;
+            }
+            long sendStart = System.nanoTime();
+            send(kind, a, b, c, d, e);
+            long sent = System.nanoTime();
+            m_sendCall.record(sent - sendStart);
+            long latency = sent - queuedAt;
+            m_lastLatencyNanos = latency;
+            if (latency > m_maxLatencyNanos) m_maxLatencyNanos = latency;
+            synchronized (m_lock) {
+                m_sent++;
+            }
+        }
+    }
+
+    private void send(int kind, int a, int b, int c, int d, int e) {
+        switch (kind) {
+            case kBlinkLED:
+                CANLightJNI.BlinkLED(m_handle, a);
+                break;
+            case kShowRGB:
+                CANLightJNI.ShowRGB(m_handle, a, b, c);
+                break;
+            case kWriteRegister:
+                CANLightJNI.WriteRegister(m_handle, a, b, c, d, e);
+                break;
+            case kReset:
+                CANLightJNI.Reset(m_handle);
+                break;
+            case kShowRegister:
+                CANLightJNI.ShowRegister(m_handle, a);
+                break;
+            case kFlash:
+                CANLightJNI.Flash(m_handle, a);
+                break;
+            case kCycle:
+                CANLightJNI.Cycle(m_handle, a, b);
+                break;
+            case kFade:
+                CANLightJNI.Fade(m_handle, a, b);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Send whatever is still queued, then stop the worker thread.
+     *
+     * @return True if the worker thread has exited. If it is still stuck in a JNI call after the
+     * wait, it may still use the handle, so the handle must not be destroyed.
+     */
+    boolean close() {
+        synchronized (m_lock) {
+            m_running = false;
+            m_lock.notify();
+        }
+        try {
+            m_thread.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return !m_thread.isAlive();
+    }
+
+    int getQueueDepth() {
+        synchronized (m_lock) {
+            return m_size;
+        }
+    }
+
+    double getLastLatencyMillis() {
+        return m_lastLatencyNanos / 1e6;
+    }
+
+    double getMaxLatencyMillis() {
+        return m_maxLatencyNanos / 1e6;
+    }
+
+    long getSentCount() {
+        synchronized (m_lock) {
+            return m_sent;
+        }
+    }
+
+    long getCoalescedCount() {
+        synchronized (m_lock) {
+            return m_coalesced;
+        }
+    }
+
+    long getRedundantCount() {
+        synchronized (m_lock) {
+            return m_redundant;
+        }
+    }
+
+    long getDroppedCount() {
+        synchronized (m_lock) {
+            return m_dropped;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package frc.robot;
+
+/**
+ * Owns the {@link CANLight} for every device ID in use (1 to 60) and remembers what has been sent
+ * to each one: the time and color in each of its 8 registers, and the command it is displaying.
+ * A command that would not change the device is skipped here, before it costs a JNI call or a CAN
+ * frame, so code can call the display methods every loop with whatever it wants shown.
+ * <p>
+ * Nothing is known about a device until something has been sent to it, so the first write always
+ * goes out. {@link #reset(int)} forgets the registers, since their default durations are not
+ * known. A CANLight that loses power goes back to its defaults without telling anyone; call
+ * {@link #invalidate(int)} when that may have happened (after a brownout, for example) so the next
+ * writes are sent again.
+ * <p>
+ * {@link #program(RegisterSet, int...)} writes a whole set of registers to several strips at once,
+ * for setting up the colors at init.
+ * <p>
+ * With non-blocking CANLights a command can be dropped when the device's queue is full. A dropped
+ * command is not remembered as sent, so the same call on a later loop sends it again. Programming
+ * more registers than the queue holds at once leaves some of them to be written again later.
+ * <p>
+ * Only use the pool from one thread, and do not keep the CANLight instances: commands sent to them
+ * directly are not seen by the pool.
+ */
+public class CANLightPool {
+    private static final int kMaxDevice = 60;
+    private static final int kRegisterCount = 8;
+
+    /**
+     * The contents of some of a CANLight's registers, to {@link CANLightPool#program program} into
+     * several devices. Registers that are not set are left alone.
+     */
+    public static final class RegisterSet {
+        private final boolean[] m_set = new boolean[kRegisterCount];
+        private final int[] m_times = new int[kRegisterCount];
+        private final int[] m_colors = new int[kRegisterCount];
+
+        /**
+         * Set a register, with the same arguments as
+         * {@link CANLight#writeRegister(int, double, int, int, int)}.
+         */
+        public RegisterSet set(int index, double time, int red, int green, int blue) {
+            checkRegister(index);
+            m_set[index] = true;
+            m_times[index] = toCentiseconds(time);
+            m_colors[index] = packColor(red, green, blue);
+            return this;
+        }
+    }
+
+    private final int m_queueDepth;
+    private final DeviceMonitor m_monitor;
+    private final CANLight[] m_lights = new CANLight[kMaxDevice + 1];
+
+    // what each device has been sent, indexed by device ID. Register colors are packed 0xRRGGBB
+    private final boolean[][] m_registerKnown = new boolean[kMaxDevice + 1][kRegisterCount];
+    private final int[][] m_registerTimes = new int[kMaxDevice + 1][kRegisterCount];
+    private final int[][] m_registerColors = new int[kMaxDevice + 1][kRegisterCount];
+    private final int[] m_displayKind = new int[kMaxDevice + 1];
+    private final int[] m_displayA = new int[kMaxDevice + 1];
+    private final int[] m_displayB = new int[kMaxDevice + 1];
+    private final int[] m_displayC = new int[kMaxDevice + 1];
+
+    private long m_sent;
+    private long m_skipped;
+
+    /**
+     * @param queueDepth passed to every {@link CANLight#CANLight(int, int)} the pool creates, 0 for
+     * blocking calls
+     */
+    public CANLightPool(int queueDepth) {
+        this(queueDepth, null);
+    }
+
+    /**
+     * @param queueDepth see {@link #CANLightPool(int)}
+     * @param monitor every CANLight the pool creates is added to it as "CANLight (id)", null to
+     * not publish their call times
+     */
+    public CANLightPool(int queueDepth, DeviceMonitor monitor) {
+        if (queueDepth < 0)
+            throw new IllegalArgumentException("Queue depth must not be negative.");
+        m_queueDepth = queueDepth;
+        m_monitor = monitor;
+    }
+
+    /**
+     * @return the CANLight for a device ID, created the first time it is asked for. Use it for the
+     * getters, commands sent through it directly bypass the pool.
+     */
+    public CANLight get(int deviceNumber) {
+        if (deviceNumber > kMaxDevice || deviceNumber < 1)
+            throw new IndexOutOfBoundsException("Device number must be between 1 and 60.");
+        CANLight light = m_lights[deviceNumber];
+        if (light == null) {
+            light = m_monitor != null
+                ? new CANLight(deviceNumber, m_queueDepth, m_monitor.addDevice("CANLight (" + deviceNumber + ")"))
+                : new CANLight(deviceNumber, m_queueDepth);
+            m_lights[deviceNumber] = light;
+        }
+        return light;
+    }
+
+    /** See {@link CANLight#writeRegister(int, double, int, int, int)}. */
+    public void writeRegister(int deviceNumber, int index, double time, int red, int green, int blue) {
+        checkRegister(index);
+        writeRegister(deviceNumber, index, toCentiseconds(time), packColor(red, green, blue));
+    }
+
+    private void writeRegister(int deviceNumber, int index, int centiseconds, int color) {
+        CANLight light = get(deviceNumber);
+        boolean[] known = m_registerKnown[deviceNumber];
+        if (known[index] && m_registerTimes[deviceNumber][index] == centiseconds
+                && m_registerColors[deviceNumber][index] == color) {
+            m_skipped++;
+            return;
+        }
+        if (!light.writeRegister(index, centiseconds / 100.0,
+                (color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF)) {
+            // dropped, the register keeps what it had and the next identical call tries again
+            return;
+        }
+        known[index] = true;
+        m_registerTimes[deviceNumber][index] = centiseconds;
+        m_registerColors[deviceNumber][index] = color;
+        // a display that uses the register may look different now, let the next display command through
+        m_displayKind[deviceNumber] = CANLightCommandQueue.kNone;
+        m_sent++;
+    }
+
+    /**
+     * Write every register in the set to each device, skipping registers that already hold the
+     * same values.
+     */
+    public void program(RegisterSet registers, int... deviceNumbers) {
+        for (int deviceNumber : deviceNumbers) {
+            for (int i = 0; i < kRegisterCount; i++) {
+                if (registers.m_set[i]) {
+                    writeRegister(deviceNumber, i, registers.m_times[i], registers.m_colors[i]);
+                }
+            }
+        }
+    }
+
+    /** See {@link CANLight#reset()}, never skipped. */
+    public void reset(int deviceNumber) {
+        // sent or not, the registers are not known any more
+        invalidate(deviceNumber);
+        if (get(deviceNumber).reset()) m_sent++;
+    }
+
+    /** See {@link CANLight#showRGB(int, int, int)}. */
+    public void showRGB(int deviceNumber, int red, int green, int blue) {
+        display(deviceNumber, CANLightCommandQueue.kShowRGB, clamp(red), clamp(green), clamp(blue));
+    }
+
+    /** See {@link CANLight#showRegister(int)}. */
+    public void showRegister(int deviceNumber, int index) {
+        checkRegister(index);
+        display(deviceNumber, CANLightCommandQueue.kShowRegister, index, 0, 0);
+    }
+
+    /** See {@link CANLight#flash(int)}. */
+    public void flash(int deviceNumber, int index) {
+        checkRegister(index);
+        display(deviceNumber, CANLightCommandQueue.kFlash, index, 0, 0);
+    }
+
+    /** See {@link CANLight#cycle(int, int)}. */
+    public void cycle(int deviceNumber, int fromIndex, int toIndex) {
+        checkRegister(fromIndex);
+        checkRegister(toIndex);
+        display(deviceNumber, CANLightCommandQueue.kCycle, Math.min(fromIndex, toIndex), Math.max(fromIndex, toIndex), 0);
+    }
+
+    /** See {@link CANLight#fade(int, int)}. */
+    public void fade(int deviceNumber, int startIndex, int endIndex) {
+        checkRegister(startIndex);
+        checkRegister(endIndex);
+        display(deviceNumber, CANLightCommandQueue.kFade, Math.min(startIndex, endIndex), Math.max(startIndex, endIndex), 0);
+    }
+
+    private void display(int deviceNumber, int kind, int a, int b, int c) {
+        CANLight light = get(deviceNumber);
+        if (m_displayKind[deviceNumber] == kind && m_displayA[deviceNumber] == a
+                && m_displayB[deviceNumber] == b && m_displayC[deviceNumber] == c) {
+            m_skipped++;
+            return;
+        }
+        boolean sent;
+        switch (kind) {
+            case CANLightCommandQueue.kShowRGB:
+                sent = light.showRGB(a, b, c);
+                break;
+            case CANLightCommandQueue.kShowRegister:
+                sent = light.showRegister(a);
+                break;
+            case CANLightCommandQueue.kFlash:
+                sent = light.flash(a);
+                break;
+            case CANLightCommandQueue.kCycle:
+                sent = light.cycle(a, b);
+                break;
+            case CANLightCommandQueue.kFade:
+                sent = light.fade(a, b);
+                break;
+            default:
+                return;
+        }
+        // dropped, keep the old state so the next identical call tries again
+        if (!sent) return;
+        m_displayKind[deviceNumber] = kind;
+        m_displayA[deviceNumber] = a;
+        m_displayB[deviceNumber] = b;
+        m_displayC[deviceNumber] = c;
+        m_sent++;
+    }
+
+    /** Forget what a device was sent, so the next commands to it all go out. */
+    public void invalidate(int deviceNumber) {
+        for (int i = 0; i < kRegisterCount; i++) {
+            m_registerKnown[deviceNumber][i] = false;
+        }
+        m_displayKind[deviceNumber] = CANLightCommandQueue.kNone;
+    }
+
+    /** {@link #invalidate(int)} every device. */
+    public void invalidateAll() {
+        for (int id = 1; id <= kMaxDevice; id++) {
+            invalidate(id);
+        }
+    }
+
+    /** @return how many commands were passed on to a CANLight */
+    public long getSentCount() {
+        return m_sent;
+    }
+
+    /** @return how many commands were skipped because the device already had that state */
+    public long getSkippedCount() {
+        return m_skipped;
+    }
+
+    /** Free every CANLight the pool created. */
+    public void free() {
+        for (int id = 1; id <= kMaxDevice; id++) {
+            if (m_lights[id] != null) {
+                m_lights[id].free();
+                m_lights[id] = null;
+                invalidate(id);
+            }
+        }
+    }
+
+    private static void checkRegister(int index) {
+        if (index > 7 || index < 0)
+            throw new IndexOutOfBoundsException("Index must be between 0 and 7.");
+    }
+
+    // the same rounding and limits as CANLight.writeRegister, so equal requests compare equal
+    private static int toCentiseconds(double time) {
+        if (time < 0)
+            throw new IllegalArgumentException("Time/duration must be positive.");
+        return (int) Math.min(255, Math.round(time*1000/10));
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static int packColor(int red, int green, int blue) {
+        return (clamp(red) << 16) | (clamp(green) << 8) | clamp(blue);
+    }
+}
@@ -0,0 +1,313 @@
+package frc.robot;
+
+import edu.wpi.first.cameraserver.CameraServer;
+import edu.wpi.first.cscore.CameraServerJNI;
+import edu.wpi.first.cscore.CvSource;
+import edu.wpi.first.cscore.MjpegServer;
+import edu.wpi.first.cscore.UsbCamera;
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+import edu.wpi.first.cscore.VideoSource;
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Every camera goes through one MJPEG server, so the drivers get a single stream and only the
+ * camera being watched is captured (cscore closes cameras nothing is streaming). The resolution,
+ * frame rate and JPEG quality follow the robot mode, and are lowered step by step until the
+ * estimated stream fits the bandwidth budget. The budget can be changed from the dashboard
+ * ("Camera/budget Mbps").
+ *
+ * <p>About once a second the actual frame rate and data rate of the active camera are published
+ * to the "Camera" table, along with the CPU time spent outside of Java threads, which is where
+ * cscore captures and encodes. That number also includes the other native threads (HAL,
+ * NetworkTables), compare it with the stream on and off.
+ *
+ * <p>{@link #addSyntheticCamera(String)} adds a camera drawn by a background thread instead of a
+ * USB camera, so the whole path can be tried in simulation.
+ */
+public class CameraManager {
+  public static final int kDisabled = 0;
+  public static final int kAutonomous = 1;
+  public static final int kTeleop = 2;
+  private static final String[] kModeNames = {"Disabled", "Autonomous", "Teleop"};
+
+  // quality the cameras' own MJPEG is assumed to have when the server passes it through
+  private static final int kCameraQuality = 80;
+  private static final int kMinQuality = 20;
+  private static final int kMinFps = 5;
+  private static final int kMinWidth = 80;
+  private static final long kStatsPeriodNanos = 1_000_000_000;
+
+  /** What to stream in one mode. A quality of -1 passes the camera's own JPEGs through. */
+  public static final class Profile {
+    public final int width;
+    public final int height;
+    public final int fps;
+    public final int quality;
+
+    public Profile(int width, int height, int fps, int quality) {
+      this.width = width;
+      this.height = height;
+      this.fps = fps;
+      this.quality = quality;
+    }
+
+    /** Rough MJPEG bandwidth in megabits per second, JPEG size grows with quality. */
+    public double estimateMbps() {
+      int quality = this.quality < 0 ? kCameraQuality : this.quality;
+      double bytesPerPixel = 0.05 + 0.002 * quality;
+      return width * height * bytesPerPixel * fps * 8 / 1e6;
+    }
+
+    /**
+     * @return this profile, or the closest one that fits the budget. Quality goes first, then
+     *     frame rate, then resolution, since the drivers notice those in that order.
+     */
+    public Profile within(double budgetMbps) {
+      Profile profile = this;
+      while (profile.estimateMbps() > budgetMbps) {
+        if (profile.quality < 0 || profile.quality > kMinQuality) {
+          int quality = profile.quality < 0 ? kCameraQuality - 10 : profile.quality - 10;
+          profile = new Profile(profile.width, profile.height, profile.fps, Math.max(kMinQuality, quality));
+        } else if (profile.fps > kMinFps) {
+          profile = new Profile(profile.width, profile.height, Math.max(kMinFps, profile.fps * 2 / 3), profile.quality);
+        } else if (profile.width / 2 >= kMinWidth) {
+          profile = new Profile(profile.width / 2, profile.height / 2, profile.fps, profile.quality);
+        } else {
+          break;
+        }
+      }
+      return profile;
+    }
+
+    @Override
+    public String toString() {
+      return width + "x" + height + "@" + fps + (quality < 0 ? "" : " q" + quality);
+    }
+  }
+
+  private final MjpegServer m_server;
+  private final List<VideoSource> m_sources = new CopyOnWriteArrayList<>();
+  private final List<String> m_names = new CopyOnWriteArrayList<>();
+  private final Profile[] m_profiles = {
+    new Profile(160, 120, 5, -1),
+    new Profile(160, 120, 10, -1),
+    new Profile(320, 240, 15, -1)
+  };
+
+  private final DoubleEntry m_budgetEntry;
+  private final StringPublisher m_activePub;
+  private final StringPublisher m_profilePub;
+  private final DoublePublisher m_estimatePub;
+  private final DoublePublisher m_fpsPub;
+  private final DoublePublisher m_dataRatePub;
+  private final DoublePublisher m_nativeCpuPub;
+  private final Thread m_statsThread;
+
+  private volatile double m_budgetMbps;
+  private volatile boolean m_dirty = true;
+  private volatile int m_active = -1;
+  private volatile Profile m_applied;
+  private volatile boolean m_running = true;
+  private int m_mode = -1;
+
+  /**
+   * @param name name of the stream the dashboard shows
+   * @param budgetMbps bandwidth the stream may use, the field allows 4 Mbps for the whole robot
+   */
+  public CameraManager(String name, double budgetMbps) {
+    m_budgetMbps = budgetMbps;
+    m_server = CameraServer.addSwitchedCamera(name);
+    CameraServerJNI.setTelemetryPeriod(1.0);
+
+    NetworkTable table = NetworkTableInstance.getDefault().getTable("Camera");
+    m_budgetEntry = table.getDoubleTopic("budget Mbps").getEntry(budgetMbps);
+    m_budgetEntry.set(budgetMbps);
+    m_activePub = table.getStringTopic("active").publish();
+    m_profilePub = table.getStringTopic("profile").publish();
+    m_estimatePub = table.getDoubleTopic("estimated Mbps").publish();
+    m_fpsPub = table.getDoubleTopic("fps").publish();
+    m_dataRatePub = table.getDoubleTopic("data rate Mbps").publish();
+    m_nativeCpuPub = table.getDoubleTopic("native cpu percent").publish();
+
+    m_statsThread = new Thread(this::runStats, "CameraStats");
+    m_statsThread.setDaemon(true);
+    m_statsThread.start();
+  }
+
+  /** Add a USB camera, the first camera added is streamed first. */
+  public int addUsbCamera(String name, int device) {
+    UsbCamera camera = new UsbCamera(name, device);
+    camera.setPixelFormat(PixelFormat.kMJPEG);
+    camera.setConnectionStrategy(VideoSource.ConnectionStrategy.kAutoManage);
+    return add(name, camera);
+  }
+
+  /** Add a camera that draws a moving test pattern, for simulation and testing without a camera. */
+  public int addSyntheticCamera(String name) {
+    Profile profile = m_profiles[kDisabled];
+    CvSource source = new CvSource(name, PixelFormat.kBGR, profile.width, profile.height, profile.fps);
+    int index = add(name, source);
+    Thread thread = new Thread(() -> runSynthetic(index, source), "SyntheticCamera " + name);
+    thread.setDaemon(true);
+    thread.start();
+    return index;
+  }
+
+  private int add(String name, VideoSource source) {
+    CameraServer.addCamera(source);
+    m_sources.add(source);
+    m_names.add(name);
+    if (m_active < 0) select(0);
+    return m_sources.size() - 1;
+  }
+
+  /** Stream another camera, the mode's profile is applied to it at the next {@link #periodic}. */
+  public void select(int index) {
+    if (index == m_active || index < 0 || index >= m_sources.size()) return;
+    m_server.setSource(m_sources.get(index));
+    m_active = index;
+    m_dirty = true;
+    m_activePub.set(m_names.get(index));
+  }
+
+  /** Stream the next camera, wrapping around. */
+  public void next() {
+    if (m_sources.isEmpty()) return;
+    select((m_active + 1) % m_sources.size());
+  }
+
+  /** Replace what is streamed in a mode (one of kDisabled, kAutonomous, kTeleop). */
+  public void setProfile(int mode, Profile profile) {
+    m_profiles[mode] = profile;
+    m_dirty = true;
+  }
+
+  public void setBudget(double budgetMbps) {
+    m_budgetEntry.set(budgetMbps);
+    m_budgetMbps = budgetMbps;
+    m_dirty = true;
+  }
+
+  /**
+   * Call every loop with the robot mode. Only talks to cscore when the mode, the camera or the
+   * budget changed.
+   */
+  public void periodic(int mode) {
+    if (mode == m_mode && !m_dirty) return;
+    m_mode = mode;
+    m_dirty = false;
+    if (m_active < 0) return;
+
+    Profile profile = m_profiles[mode].within(m_budgetMbps);
+    VideoSource source = m_sources.get(m_active);
+    // capture at the size we stream, so the server can pass the camera's JPEGs straight through
+    source.setVideoMode(source instanceof CvSource ? PixelFormat.kBGR : PixelFormat.kMJPEG,
+        profile.width, profile.height, profile.fps);
+    m_server.setResolution(profile.width, profile.height);
+    m_server.setFPS(profile.fps);
+    m_server.setCompression(profile.quality);
+    m_applied = profile;
+
+    m_profilePub.set(kModeNames[mode] + " " + profile);
+    m_estimatePub.set(profile.estimateMbps());
+  }
+
+  /** @return the profile being streamed, null before the first {@link #periodic} */
+  public Profile getProfile() {
+    return m_applied;
+  }
+
+  public int getActive() {
+    return m_active;
+  }
+
+  private void runStats() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    boolean cpuSupported = threads.isThreadCpuTimeSupported()
+        && os instanceof com.sun.management.OperatingSystemMXBean;
+    long lastWall = System.nanoTime();
+    long lastNative = cpuSupported ? nativeCpuNanos(threads, os) : 0;
+
+    while (m_running) {
+      LockSupport.parkNanos(kStatsPeriodNanos);
+
+      double budget = m_budgetEntry.get();
+      if (budget > 0 && budget != m_budgetMbps) {
+        m_budgetMbps = budget;
+        m_dirty = true;
+      }
+
+      int active = m_active;
+      if (active >= 0) {
+        VideoSource source = m_sources.get(active);
+        m_fpsPub.set(source.getActualFPS());
+        m_dataRatePub.set(source.getActualDataRate() * 8 / 1e6);
+      }
+
+      if (cpuSupported) {
+        long now = System.nanoTime();
+        long nativeNanos = nativeCpuNanos(threads, os);
+        m_nativeCpuPub.set(100.0 * (nativeNanos - lastNative) / (now - lastWall));
+        lastNative = nativeNanos;
+        lastWall = now;
+      }
+    }
+  }
+
+  // process CPU time minus the CPU time of every Java thread
+  private static long nativeCpuNanos(ThreadMXBean threads, OperatingSystemMXBean os) {
+    long process = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+    long javaThreads = 0;
+    for (long id : threads.getAllThreadIds()) {
+      long time = threads.getThreadCpuTime(id);
+      if (time > 0) javaThreads += time;
+    }
+    return process - javaThreads;
+  }
+
+  // draws a bar sweeping across a slowly changing background at the streamed size and rate
+  private void runSynthetic(int index, CvSource source) {
+    Mat frame = null;
+    Scalar white = new Scalar(255, 255, 255);
+    long count = 0;
+    while (m_running) {
+      Profile profile = m_applied;
+      if (m_active != index || profile == null) {
+        LockSupport.parkNanos(100_000_000);
+        continue;
+      }
+      if (frame == null || frame.cols() != profile.width || frame.rows() != profile.height) {
+        if (frame != null) frame.release();
+        frame = new Mat(profile.height, profile.width, CvType.CV_8UC3);
+      }
+      frame.setTo(new Scalar(count % 256, (count * 3) % 256, 128));
+      int x = (int) ((count * 4) % profile.width);
+      Imgproc.rectangle(frame, new Point(x, 0), new Point(x + profile.width / 8, profile.height), white, -1);
+      source.putFrame(frame);
+      count++;
+      LockSupport.parkNanos(1_000_000_000L / profile.fps);
+    }
+  }
+
+  /** Stop the background threads. */
+  public void close() {
+    m_running = false;
+    LockSupport.unpark(m_statsThread);
+  }
+}
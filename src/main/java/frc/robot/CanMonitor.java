@@ -0,0 +1,107 @@
+package frc.robot;
+
+import edu.wpi.first.hal.can.CANStatus;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.wpilibj.RobotController;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the state of the CAN bus to the "CAN" NetworkTables table from a background thread:
+ * the bus utilization the rio measures, the CAN controller's transmit and receive error counters,
+ * and how many times per second a frame could not be sent because the transmit buffer was full or
+ * the bus went off.
+ *
+ * <p>The rio cannot count the frames each device sends, so every device registered with
+ * {@link #addDevice} is published with the status frame rate of its {@link CanTrafficProfile},
+ * along with what all of them add up to as a share of the bus. Compare that with the measured
+ * utilization before adding devices.
+ */
+public class CanMonitor {
+  // an extended frame with 8 data bytes, with an average amount of bit stuffing
+  private static final double kBitsPerFrame = 140;
+  private static final double kBitsPerSecond = 1_000_000;
+  private static final int kMaxDevices = 16;
+
+  private final NetworkTable m_table;
+  private final long m_periodNanos;
+  private final DoublePublisher m_utilizationPub;
+  private final IntegerPublisher m_txErrorsPub;
+  private final IntegerPublisher m_rxErrorsPub;
+  private final DoublePublisher m_txFullRatePub;
+  private final DoublePublisher m_busOffRatePub;
+  private final DoublePublisher m_statusFramesPub;
+  private final DoublePublisher m_statusUtilizationPub;
+  private final StringPublisher[] m_profilePubs = new StringPublisher[kMaxDevices];
+  private final DoublePublisher[] m_devicePubs = new DoublePublisher[kMaxDevices];
+  private final Thread m_thread;
+
+  private volatile int m_deviceCount;
+  private volatile double m_statusFrames;
+  private volatile boolean m_running = true;
+
+  /** @param periodSeconds how often to publish */
+  public CanMonitor(double periodSeconds) {
+    m_periodNanos = (long) (periodSeconds * 1e9);
+    m_table = NetworkTableInstance.getDefault().getTable("CAN");
+    m_utilizationPub = m_table.getDoubleTopic("utilization %").publish();
+    m_txErrorsPub = m_table.getIntegerTopic("tx errors").publish();
+    m_rxErrorsPub = m_table.getIntegerTopic("rx errors").publish();
+    m_txFullRatePub = m_table.getDoubleTopic("tx full per s").publish();
+    m_busOffRatePub = m_table.getDoubleTopic("bus off per s").publish();
+    m_statusFramesPub = m_table.getDoubleTopic("configured status frames per s").publish();
+    m_statusUtilizationPub = m_table.getDoubleTopic("configured status %").publish();
+
+    m_thread = new Thread(this::run, "CanMonitor");
+    m_thread.setDaemon(true);
+    m_thread.start();
+  }
+
+  /** Register a Spark MAX and the profile applied to it, call at init. */
+  public synchronized void addDevice(String name, int canId, CanTrafficProfile profile) {
+    int index = m_deviceCount;
+    if (index >= kMaxDevices)
+      throw new IllegalStateException("Too many CAN devices, raise kMaxDevices.");
+    NetworkTable device = m_table.getSubTable("devices").getSubTable(name + " (" + canId + ")");
+    m_profilePubs[index] = device.getStringTopic("profile").publish();
+    m_profilePubs[index].set(profile.getName());
+    m_devicePubs[index] = device.getDoubleTopic("status frames per s").publish();
+    m_devicePubs[index].set(profile.getFramesPerSecond());
+    m_statusFrames += profile.getFramesPerSecond();
+    m_deviceCount = index + 1;
+  }
+
+  private void run() {
+    CANStatus last = RobotController.getCANStatus();
+    long lastTime = System.nanoTime();
+    while (m_running) {
+      LockSupport.parkNanos(m_periodNanos);
+      CANStatus status = RobotController.getCANStatus();
+      long now = System.nanoTime();
+      double seconds = (now - lastTime) / 1e9;
+
+      // the HAL reports utilization as a fraction
+      m_utilizationPub.set(status.percentBusUtilization * 100);
+      m_txErrorsPub.set(status.transmitErrorCount);
+      m_rxErrorsPub.set(status.receiveErrorCount);
+      m_txFullRatePub.set((status.txFullCount - last.txFullCount) / seconds);
+      m_busOffRatePub.set((status.busOffCount - last.busOffCount) / seconds);
+
+      double frames = m_statusFrames;
+      m_statusFramesPub.set(frames);
+      m_statusUtilizationPub.set(100 * frames * kBitsPerFrame / kBitsPerSecond);
+
+      last = status;
+      lastTime = now;
+    }
+  }
+
+  /** Stop the background thread. */
+  public void close() {
+    m_running = false;
+    LockSupport.unpark(m_thread);
+  }
+}
@@ -0,0 +1,114 @@
+package frc.robot;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+import com.revrobotics.REVLibError;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * How often a Spark MAX sends each of its periodic status frames, in milliseconds. Out of the box
+ * every frame is sent whether anything reads it or not, 280 frames a second per controller.
+ * A profile slows the frames nobody reads and keeps the ones we do read at their default rate.
+ *
+ * <p>What is in each frame: status 0 applied output and faults, 1 velocity, temperature, voltage
+ * and current, 2 position of the built-in encoder, 3 analog sensor, 4 alternate encoder, 5 and 6
+ * duty cycle (absolute) encoder position and velocity.
+ *
+ * <p>The Spark MAX does not save these, it goes back to the defaults when it resets (after a
+ * brownout, for example), so apply the profile again then.
+ */
+public final class CanTrafficProfile {
+  // how often a frame nobody reads is still sent, slow but enough for the REV hardware client
+  private static final int kUnused = 500;
+  // the shoulder's position loop runs this often, a slower position frame would give it the same
+  // reading several steps in a row
+  private static final int kControlledPosition = (int) Math.round(ShoulderController.kPeriod * 1000);
+
+  /** The Spark MAX defaults. */
+  public static final CanTrafficProfile kFactoryDefault =
+      new CanTrafficProfile("factory default", 10, 20, 20, 50, 20, 200, 200);
+
+  /**
+   * The built-in encoder's position is read by a position loop, status 2 is sent every control step
+   * (5 ms, see {@link ShoulderController#kPeriod}). Output and faults only go to the dashboard, so
+   * status 0 is slowed a little. About 230 frames a second.
+   */
+  public static final CanTrafficProfile kPosition =
+      new CanTrafficProfile("position", 50, kUnused, kControlledPosition, kUnused, kUnused, kUnused, kUnused);
+
+  /** Nothing is read back, only output and faults are still sent often enough to see on the dashboard. */
+  public static final CanTrafficProfile kOutputOnly =
+      new CanTrafficProfile("output only", 50, kUnused, kUnused, kUnused, kUnused, kUnused, kUnused);
+
+  /**
+   * {@link #kPosition} with the current read every main loop too, for the {@link PowerManager}.
+   * About 278 frames a second, 3.9% of the bus.
+   */
+  public static final CanTrafficProfile kPositionAndCurrent =
+      new CanTrafficProfile("position and current", 50, 20, kControlledPosition, kUnused, kUnused, kUnused, kUnused);
+
+  /** Only the current is read, every main loop, for the {@link PowerManager}. About 80 frames a second. */
+  public static final CanTrafficProfile kCurrent =
+      new CanTrafficProfile("current", 50, 20, kUnused, kUnused, kUnused, kUnused, kUnused);
+
+  private static final PeriodicFrame[] kFrames = {
+    PeriodicFrame.kStatus0, PeriodicFrame.kStatus1, PeriodicFrame.kStatus2, PeriodicFrame.kStatus3,
+    PeriodicFrame.kStatus4, PeriodicFrame.kStatus5, PeriodicFrame.kStatus6
+  };
+
+  private final String m_name;
+  private final int[] m_periodsMs;
+
+  /** Periods of status frames 0 to 6, in milliseconds. */
+  public CanTrafficProfile(String name, int status0, int status1, int status2, int status3,
+      int status4, int status5, int status6) {
+    m_name = name;
+    m_periodsMs = new int[] {status0, status1, status2, status3, status4, status5, status6};
+    for (int period : m_periodsMs) {
+      if (period < 1 || period > 65535)
+        throw new IllegalArgumentException("Status frame periods must be 1 to 65535 ms.");
+    }
+  }
+
+  /**
+   * Set every status frame period of a controller. A frame the controller refuses is reported to
+   * the driver station and the rest are still set.
+   *
+   * @return true if every frame was set
+   */
+  public boolean apply(CANSparkMax motor) {
+    boolean ok = true;
+    for (int i = 0; i < kFrames.length; i++) {
+      REVLibError error = motor.setPeriodicFramePeriod(kFrames[i], m_periodsMs[i]);
+      if (error != REVLibError.kOk) {
+        ok = false;
+        DriverStation.reportWarning("Spark MAX " + motor.getDeviceId() + ": setting status " + i
+            + " to " + m_periodsMs[i] + " ms failed, " + error, false);
+      }
+    }
+    return ok;
+  }
+
+  /** @return the period of status frame 0 to 6, in milliseconds */
+  public int getPeriodMs(int frame) {
+    return m_periodsMs[frame];
+  }
+
+  /** @return how many status frames a second a controller with this profile sends */
+  public double getFramesPerSecond() {
+    double frames = 0;
+    for (int period : m_periodsMs) {
+      frames += 1000.0 / period;
+    }
+    return frames;
+  }
+
+  public String getName() {
+    return m_name;
+  }
+
+  @Override
+  public String toString() {
+    return m_name;
+  }
+}
@@ -0,0 +1,172 @@
+package frc.robot;
+
+import java.util.Random;
+
+/**
+ * A one dimensional model of the robot driving onto the charge station, used to try autoBalance
+ * without a field. The robot drives along x towards the station, the station is a seesaw that
+ * tips under the robot's weight, limited to +-15 degrees. The model also produces the
+ * accelerometer reading the rio would see, including how the rio is mounted.
+ *
+ * <p>Nothing here touches the HAL or the clock, so many copies can run at once on any thread,
+ * as fast as the CPU allows. Units are meters, seconds, radians inside, degrees at the edges.
+ */
+public class ChargeStationSim {
+  private static final double kGravity = 9.81;
+
+  // robot
+  private static final double kMaxSpeed = 3.5;
+  private static final double kDriveTimeConstant = 0.2;
+  // traction limit, past this the wheels slip
+  private static final double kMaxAcceleration = 3;
+  // how much of gravity along the slope the drive can not hold back
+  private static final double kSlopeFactor = 0.5;
+  private static final double kRobotMass = 55;
+
+  // field, the robot's center starts at 0 with the bumpers against the grid
+  private static final double kGridPosition = 0;
+  private static final double kStationStart = 1.1;
+  private static final double kStationDepth = 1.93;
+  private static final double kPivot = kStationStart + kStationDepth / 2;
+  private static final double kMaxStationAngle = Math.toRadians(15);
+  private static final double kStationInertia = 12;
+  private static final double kStationDamping = 800;
+
+  /** The FMS counts the station as level within this many degrees. */
+  public static final double kLevelToleranceDegrees = 2.5;
+
+  private final Random m_random;
+  private final double m_noise;
+  private double m_initialAngle = kMaxStationAngle;
+
+  private double m_position;
+  private double m_velocity;
+  private double m_acceleration;
+  private double m_angle;
+  private double m_angularVelocity;
+  private double m_accelX;
+  private double m_accelY;
+  private double m_accelZ;
+
+  /**
+   * @param seed seed for the sensor noise, the same seed gives the same run
+   * @param noise standard deviation of the accelerometer noise in g
+   */
+  public ChargeStationSim(long seed, double noise) {
+    m_random = new Random(seed);
+    m_noise = noise;
+    reset();
+  }
+
+  /** Robot back against the grid, station resting on the side nearest the robot. */
+  public void reset() {
+    m_position = kGridPosition;
+    m_velocity = 0;
+    m_acceleration = 0;
+    m_angle = m_initialAngle;
+    m_angularVelocity = 0;
+    updateAccelerometer();
+  }
+
+  /** Start angle of the station in degrees for the next reset, positive is the near side down. */
+  public void setInitialStationAngle(double degrees) {
+    m_initialAngle = Math.toRadians(Math.max(-15, Math.min(15, degrees)));
+  }
+
+  /**
+   * Advance the model.
+   *
+   * @param driveOutput forward output sent to both sides of the drivetrain, -1 to 1
+   * @param dt time step in seconds
+   */
+  public void step(double driveOutput, double dt) {
+    driveOutput = Math.max(-1, Math.min(1, driveOutput));
+    double pitch = getRobotPitchRadians();
+
+    double drive = (driveOutput * kMaxSpeed - m_velocity) / kDriveTimeConstant;
+    drive = Math.max(-kMaxAcceleration, Math.min(kMaxAcceleration, drive));
+    m_acceleration = drive - kSlopeFactor * kGravity * Math.sin(pitch);
+    m_velocity += m_acceleration * dt;
+    m_position += m_velocity * dt;
+    if (m_position < kGridPosition) {
+      // pushing against the grid
+      m_position = kGridPosition;
+      m_velocity = 0;
+      m_acceleration = 0;
+    }
+
+    // the robot's weight tips the station towards the side it is on
+    double torque = 0;
+    double inertia = kStationInertia;
+    if (isOnStation()) {
+      double offset = m_position - kPivot;
+      torque = -kRobotMass * kGravity * offset * Math.cos(m_angle);
+      inertia += kRobotMass * offset * offset;
+    }
+    m_angularVelocity += (torque - kStationDamping * m_angularVelocity) / inertia * dt;
+    m_angle += m_angularVelocity * dt;
+    if (Math.abs(m_angle) > kMaxStationAngle) {
+      m_angle = Math.copySign(kMaxStationAngle, m_angle);
+      m_angularVelocity = 0;
+    }
+
+    updateAccelerometer();
+  }
+
+  private void updateAccelerometer() {
+    // specific force in the robot frame (x forward, z up) in g, then rotated by the mounting
+    double pitch = getRobotPitchRadians();
+    double forward = m_acceleration / kGravity + Math.sin(pitch);
+    double up = Math.cos(pitch);
+    //the simulated rio is mounted the way the robot's config says the real one is
+    double mount = Math.toRadians(BalanceGains.kLevelTilt);
+    m_accelX = noise();
+    m_accelY = forward * Math.cos(mount) + up * Math.sin(mount) + noise();
+    m_accelZ = up * Math.cos(mount) - forward * Math.sin(mount) + noise();
+  }
+
+  private double noise() {
+    return m_noise > 0 ? m_random.nextGaussian() * m_noise : 0;
+  }
+
+  private double getRobotPitchRadians() {
+    return isOnStation() ? m_angle : 0;
+  }
+
+  public boolean isOnStation() {
+    return m_position >= kStationStart && m_position <= kStationStart + kStationDepth;
+  }
+
+  /** @return true if the robot is on the station and the station is level */
+  public boolean isEngaged() {
+    return isOnStation() && Math.abs(getStationAngleDegrees()) <= kLevelToleranceDegrees;
+  }
+
+  public double getAccelX() {
+    return m_accelX;
+  }
+
+  public double getAccelY() {
+    return m_accelY;
+  }
+
+  public double getAccelZ() {
+    return m_accelZ;
+  }
+
+  public double getStationAngleDegrees() {
+    return Math.toDegrees(m_angle);
+  }
+
+  public double getRobotPitchDegrees() {
+    return Math.toDegrees(getRobotPitchRadians());
+  }
+
+  public double getPosition() {
+    return m_position;
+  }
+
+  public double getVelocity() {
+    return m_velocity;
+  }
+}
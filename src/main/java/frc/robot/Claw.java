@@ -0,0 +1,82 @@
+package frc.robot;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+
+/**
+ * The brushed claw motor. Not a subsystem: no command uses it, and the command scheduler builds a
+ * watchdog epoch name for every registered subsystem on every loop.
+ */
+public class Claw {
+  private static final double closeClawSpeed = -0.37;
+  private static final double openClawSpeed = 0.25;
+
+  private final CANSparkMax m_motor;
+  private final CanTrafficProfile m_profile;
+  private final DeviceMonitor.Call m_setCall;
+  private final DeviceMonitor.Call m_currentCall;
+  private double m_speed;
+  private double m_scale = 1;
+
+  /**
+   * @param profile status frame periods, only the current is read back from the claw
+   * @param monitor times every REVLib call made each loop
+   */
+  public Claw(int deviceId, CanTrafficProfile profile, DeviceMonitor monitor) {
+    DeviceMonitor.Device device = monitor.addDevice("Claw (" + deviceId + ")");
+    m_setCall = device.addCall("set", 1);
+    m_currentCall = device.addCall("getOutputCurrent", 1);
+    m_motor = new CANSparkMax(deviceId, MotorType.kBrushed);
+    m_profile = profile;
+    configure();
+  }
+
+  //status frame periods and current limit, the Spark MAX forgets both when it resets
+  private void configure() {
+    m_profile.apply(m_motor);
+    //set a current limit for the claw, it stalls against the game piece while it holds it
+    m_motor.setSmartCurrentLimit(20);
+  }
+
+  /** Configure the Spark MAX again, after a brownout may have reset it. */
+  public void reconfigure() {
+    configure();
+  }
+
+  public void set(double speed) {
+    m_speed = speed;
+    long start = System.nanoTime();
+    m_motor.set(speed * m_scale);
+    m_setCall.record(System.nanoTime() - start, m_motor.getLastError());
+  }
+
+  /** Scale every speed from now on, for the {@link PowerManager}. */
+  public void setScale(double scale) {
+    m_scale = scale;
+  }
+
+  /** @return the motor current, in amps */
+  public double getCurrent() {
+    long start = System.nanoTime();
+    double current = m_motor.getOutputCurrent();
+    m_currentCall.record(System.nanoTime() - start, m_motor.getLastError());
+    return current;
+  }
+
+  public void close() {
+    set(closeClawSpeed);
+  }
+
+  public void open() {
+    set(openClawSpeed);
+  }
+
+  public void stop() {
+    set(0.00);
+  }
+
+  /** @return the speed from the last set call */
+  public double getSpeed() {
+    return m_speed;
+  }
+}
@@ -0,0 +1,253 @@
+package frc.robot;
+
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableValue;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotBase;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Holds the current {@link RobotConfig} and lets it be tuned from the dashboard while the robot
+ * runs.
+ *
+ * <p>At startup the snapshot is loaded from robot.properties in the deploy directory (deploy
+ * copies src/main/deploy to /home/lvuser/deploy), values missing from the file keep their
+ * defaults. Every value is then published to the "Config" NetworkTables table. When the dashboard
+ * changes one, a NetworkTables listener thread builds a new snapshot from it, checks it and swaps it
+ * in with a single reference write. A value that does not make sense is reported to the driver
+ * station and set back on the dashboard.
+ *
+ * <p>So the robot thread never reads NetworkTables or parses anything for its config, it calls
+ * {@link #get()} (one volatile read) and uses the snapshot it gets for the whole loop.
+ *
+ * <p>Dragging a slider sends a stream of changes, so the file is not written for each one. A saver
+ * thread writes the newest snapshot {@link #kSaveDelaySeconds} after the first change it has not
+ * saved, so the rio's flash sees at most one write per delay however fast values change. In
+ * simulation the deploy directory is src/main/deploy, the file in the repo, so nothing is saved and
+ * changes only last until the simulation stops.
+ *
+ * <p>Deploying again overwrites the file on the rio with the one in src/main/deploy, copy values
+ * worth keeping into it first.
+ */
+public class ConfigManager {
+  /** The file in the deploy directory. */
+  public static final String kFileName = "robot.properties";
+
+  /** How long after a change from the dashboard it is saved, in seconds. */
+  public static final double kSaveDelaySeconds = 2.0;
+
+  private final AtomicReference<RobotConfig> m_config;
+  private final Path m_file;
+  private final boolean m_save;
+
+  // a snapshot from the dashboard that is not in the file yet, written by the saver thread
+  private final AtomicReference<RobotConfig> m_unsaved = new AtomicReference<>();
+  private Thread m_saver;
+  private volatile boolean m_running;
+
+  // everything below is only touched by the listener thread once the listener is added
+  private final Map<String, String> m_values;
+  private final Map<String, DoublePublisher> m_numbers = new HashMap<>();
+  private final Map<String, BooleanPublisher> m_switches = new HashMap<>();
+  private int m_listener;
+
+  /**
+   * Load the config from the deploy directory, without publishing it. Changes from the dashboard
+   * are saved to it on the robot, not in simulation.
+   */
+  public ConfigManager() {
+    this(Filesystem.getDeployDirectory().toPath().resolve(kFileName), RobotBase.isReal());
+  }
+
+  /**
+   * Load the config from a file, without publishing it.
+   *
+   * @param save whether changes from the dashboard are written back to the file
+   */
+  public ConfigManager(Path file, boolean save) {
+    m_file = file;
+    m_save = save;
+    RobotConfig config = RobotConfig.kDefault;
+    try {
+      config = RobotConfig.fromMap(read(file), RobotConfig.kDefault);
+    } catch (NoSuchFileException ex) {
+      DriverStation.reportWarning("Config: " + file + " not found, using the defaults", false);
+    } catch (IOException | IllegalArgumentException ex) {
+      DriverStation.reportError("Config: could not load " + file + ", using the defaults. " + ex, false);
+    }
+    m_config = new AtomicReference<>(config);
+    m_values = config.toMap();
+  }
+
+  /** @return the current snapshot, read it once per loop */
+  public RobotConfig get() {
+    return m_config.get();
+  }
+
+  /**
+   * Publish every value to the "Config" table and start taking changes from the dashboard. Not
+   * for tools that replay or simulate the robot, they should run with the file as it is.
+   */
+  public synchronized void startLiveTuning() {
+    if (m_listener != 0) return;
+    NetworkTableInstance inst = NetworkTableInstance.getDefault();
+    NetworkTable table = inst.getTable("Config");
+    for (Map.Entry<String, String> value : m_values.entrySet()) {
+      String key = value.getKey();
+      String text = value.getValue();
+      if (text.equals("true") || text.equals("false")) {
+        BooleanPublisher publisher = table.getBooleanTopic(key).publish();
+        publisher.set(Boolean.parseBoolean(text));
+        m_switches.put(key, publisher);
+      } else {
+        DoublePublisher publisher = table.getDoubleTopic(key).publish();
+        publisher.set(Double.parseDouble(text));
+        m_numbers.put(key, publisher);
+      }
+    }
+    if (m_save) {
+      m_running = true;
+      m_saver = new Thread(this::runSaver, "ConfigSaver");
+      m_saver.setDaemon(true);
+      m_saver.start();
+    } else {
+      DriverStation.reportWarning("Config: changes from the dashboard are not saved to " + m_file, false);
+    }
+    m_listener = inst.addListener(new String[] {"/Config/"},
+        EnumSet.of(NetworkTableEvent.Kind.kValueRemote), this::onChange);
+  }
+
+  // runs on the NetworkTables listener thread
+  private synchronized void onChange(NetworkTableEvent event) {
+    String key = event.valueData.topic.getName().substring("/Config/".length());
+    String old = m_values.get(key);
+    if (old == null) return;
+    NetworkTableValue value = event.valueData.value;
+    String text;
+    if (value.isBoolean()) {
+      text = Boolean.toString(value.getBoolean());
+    } else if (value.isDouble()) {
+      text = Double.toString(value.getDouble());
+    } else if (value.isString()) {
+      text = value.getString();
+    } else {
+      // an int, float or array topic under /Config/ was not published by us
+      DriverStation.reportWarning("Config: ignoring " + value.getType() + " value for " + key, false);
+      return;
+    }
+    if (text.equals(old)) return;
+
+    m_values.put(key, text);
+    RobotConfig config;
+    try {
+      config = RobotConfig.fromMap(m_values, m_config.get());
+    } catch (IllegalArgumentException ex) {
+      DriverStation.reportWarning("Config: " + ex.getMessage() + ", keeping " + old, false);
+      m_values.put(key, old);
+      republish(key, old);
+      return;
+    }
+    m_config.set(config);
+
+    if (m_save) {
+      m_unsaved.set(config);
+      LockSupport.unpark(m_saver);
+    }
+  }
+
+  // runs on the saver thread, changes that come in while it waits go into the same write
+  private void runSaver() {
+    long delay = (long) (kSaveDelaySeconds * 1e9);
+    while (m_running) {
+      if (m_unsaved.get() == null) {
+        LockSupport.park(this);
+        continue;
+      }
+      long deadline = System.nanoTime() + delay;
+      long remaining;
+      while (m_running && (remaining = deadline - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(this, remaining);
+      }
+      save();
+    }
+    save();
+  }
+
+  private void save() {
+    RobotConfig config = m_unsaved.getAndSet(null);
+    if (config == null) return;
+    try {
+      write(m_file, config.toMap());
+    } catch (IOException ex) {
+      DriverStation.reportWarning("Config: could not save " + m_file + ", " + ex, false);
+    }
+  }
+
+  private void republish(String key, String text) {
+    BooleanPublisher switchPublisher = m_switches.get(key);
+    if (switchPublisher != null) switchPublisher.set(Boolean.parseBoolean(text));
+    DoublePublisher numberPublisher = m_numbers.get(key);
+    if (numberPublisher != null) numberPublisher.set(Double.parseDouble(text));
+  }
+
+  /** Stop taking changes from the dashboard, a change that is not saved yet is saved first. */
+  public synchronized void close() {
+    if (m_listener == 0) return;
+    NetworkTableInstance.getDefault().removeListener(m_listener);
+    m_listener = 0;
+    if (m_saver != null) {
+      m_running = false;
+      LockSupport.unpark(m_saver);
+      try {
+        m_saver.join(1000);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      m_saver = null;
+    }
+  }
+
+  private static Map<String, String> read(Path file) throws IOException {
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    Map<String, String> map = new LinkedHashMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      map.put(key, properties.getProperty(key));
+    }
+    return map;
+  }
+
+  // to a temporary file that is then moved over the old one, so a brownout mid write cannot leave
+  // half a file behind
+  private static void write(Path file, Map<String, String> values) throws IOException {
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+      writer.write("# Robot config, see RobotConfig. Saved by the robot when it is tuned from the dashboard.\n");
+      for (Map.Entry<String, String> value : values.entrySet()) {
+        writer.write(value.getKey() + "=" + value.getValue() + "\n");
+      }
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,132 @@
+package frc.robot;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * One Xbox controller, read once per loop into primitives. {@link #update()} copies the six axes
+ * and the button bits from the driver station, shapes the axes in place (deadband, then an
+ * exponent curve) and works out which buttons went down or up since the last update as
+ * bitmasks. Everything after that is plain field reads, so mapping code can ask for the same
+ * input as often as it likes without another trip into the driver station, and nothing is
+ * allocated.
+ *
+ * <p>{@link #update(int, double[])} takes the raw values from somewhere else instead, which is
+ * the one place recorded input has to be substituted.
+ *
+ * <p>Edges are found by comparing with the last update, so a tap shorter than one loop is missed.
+ * XboxController latches those, but the driver station only sends new data every 20 ms anyway.
+ */
+public class ControllerInput {
+  // axis indices, the same as XboxController.Axis
+  public static final int kLeftX = 0;
+  public static final int kLeftY = 1;
+  public static final int kLeftTrigger = 2;
+  public static final int kRightTrigger = 3;
+  public static final int kRightX = 4;
+  public static final int kRightY = 5;
+  public static final int kAxisCount = 6;
+
+  // button bits, bit n is XboxController.Button value n + 1
+  public static final int kA = 1;
+  public static final int kB = 1 << 1;
+  public static final int kX = 1 << 2;
+  public static final int kY = 1 << 3;
+  public static final int kLeftBumper = 1 << 4;
+  public static final int kRightBumper = 1 << 5;
+  public static final int kBack = 1 << 6;
+  public static final int kStart = 1 << 7;
+  public static final int kLeftStick = 1 << 8;
+  public static final int kRightStick = 1 << 9;
+
+  private final int m_port;
+  private final double[] m_raw = new double[kAxisCount];
+  private final double[] m_axes = new double[kAxisCount];
+  private final double[] m_deadband = new double[kAxisCount];
+  private final double[] m_exponent = {1, 1, 1, 1, 1, 1};
+  private int m_buttons;
+  private int m_pressed;
+  private int m_released;
+
+  /** @param port the driver station port of the controller */
+  public ControllerInput(int port) {
+    m_port = port;
+  }
+
+  /**
+   * Shape an axis. Values inside the deadband read 0, the rest is rescaled to start from 0 and
+   * raised to the exponent, keeping the sign. An exponent of 1 leaves it linear.
+   */
+  public ControllerInput setShaping(int axis, double deadband, double exponent) {
+    m_deadband[axis] = deadband;
+    m_exponent[axis] = exponent;
+    return this;
+  }
+
+  /** Read the controller, call once per loop before anything uses it. */
+  public void update() {
+    int axes = Math.min(kAxisCount, DriverStation.getStickAxisCount(m_port));
+    for (int i = 0; i < kAxisCount; i++) {
+      m_raw[i] = i < axes ? DriverStation.getStickAxis(m_port, i) : 0;
+    }
+    update(DriverStation.getStickButtons(m_port), m_raw);
+  }
+
+  /**
+   * Take this loop's input from somewhere other than the driver station.
+   *
+   * @param buttons button bits, see {@link #kA} and the rest
+   * @param axes raw axis values, indexed like {@link #kLeftX} and the rest, not changed
+   */
+  public void update(int buttons, double[] axes) {
+    m_pressed = buttons & ~m_buttons;
+    m_released = m_buttons & ~buttons;
+    m_buttons = buttons;
+    for (int i = 0; i < kAxisCount; i++) {
+      m_axes[i] = shape(axes[i], m_deadband[i], m_exponent[i]);
+    }
+  }
+
+  private static double shape(double value, double deadband, double exponent) {
+    double magnitude = Math.abs(value);
+    if (magnitude <= deadband) return 0;
+    magnitude = Math.min(1, (magnitude - deadband) / (1 - deadband));
+    if (exponent != 1) magnitude = Math.pow(magnitude, exponent);
+    return Math.copySign(magnitude, value);
+  }
+
+  /** @return the shaped axis value */
+  public double getAxis(int axis) {
+    return m_axes[axis];
+  }
+
+  /** @return true while every button in the mask is held */
+  public boolean isDown(int mask) {
+    return (m_buttons & mask) == mask;
+  }
+
+  /** @return true if any button in the mask went down this loop */
+  public boolean wasPressed(int mask) {
+    return (m_pressed & mask) != 0;
+  }
+
+  /** @return true if any button in the mask came up this loop */
+  public boolean wasReleased(int mask) {
+    return (m_released & mask) != 0;
+  }
+
+  public int getButtons() {
+    return m_buttons;
+  }
+
+  public int getPressed() {
+    return m_pressed;
+  }
+
+  public int getReleased() {
+    return m_released;
+  }
+
+  public int getPort() {
+    return m_port;
+  }
+}
@@ -0,0 +1,81 @@
+package frc.robot;
+
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringArrayPublisher;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.networktables.StringSubscriber;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A dashboard chooser that costs nothing while the robot runs. A SendableChooser put on the
+ * SmartDashboard is updated by SmartDashboard.updateValues() every loop, which copies its options
+ * into a new String array and polls the selection each time, whether anything changed or not.
+ * This publishes the same "String Chooser" topics once, so the dashboards show it the same way,
+ * and only reads the selection when {@link #getSelected()} is called. A NetworkTables listener
+ * echoes the selection back to "active" off the robot thread, that is how the dashboard shows the
+ * robot got it.
+ *
+ * <p>Add every option before {@link #publish(String)}, the options are sent once.
+ */
+public class DashboardChooser<V> {
+  private final Map<String, V> m_options = new LinkedHashMap<>();
+  private String m_defaultName = "";
+
+  // kept so the topics stay published
+  private StringPublisher m_typePub;
+  private StringPublisher m_namePub;
+  private BooleanPublisher m_controllablePub;
+  private StringPublisher m_defaultPub;
+  private StringArrayPublisher m_optionsPub;
+  private StringPublisher m_activePub;
+  private StringSubscriber m_selectedSub;
+
+  /** Add the option picked when the dashboard has not selected anything. */
+  public void setDefaultOption(String name, V value) {
+    m_defaultName = name;
+    addOption(name, value);
+  }
+
+  public void addOption(String name, V value) {
+    if (m_selectedSub != null)
+      throw new IllegalStateException("Options must be added before the chooser is published.");
+    m_options.put(name, value);
+  }
+
+  /** Put the chooser on the SmartDashboard under key. Call once, at init. */
+  public void publish(String key) {
+    if (m_selectedSub != null)
+      throw new IllegalStateException("The chooser is already published.");
+    NetworkTableInstance nt = NetworkTableInstance.getDefault();
+    NetworkTable table = nt.getTable("SmartDashboard").getSubTable(key);
+
+    m_typePub = table.getStringTopic(".type").publish();
+    m_typePub.set("String Chooser");
+    m_namePub = table.getStringTopic(".name").publish();
+    m_namePub.set(key);
+    m_controllablePub = table.getBooleanTopic(".controllable").publish();
+    m_controllablePub.set(false);
+    m_defaultPub = table.getStringTopic("default").publish();
+    m_defaultPub.set(m_defaultName);
+    m_optionsPub = table.getStringArrayTopic("options").publish();
+    m_optionsPub.set(m_options.keySet().toArray(new String[0]));
+    m_activePub = table.getStringTopic("active").publish();
+    m_activePub.set(m_defaultName);
+
+    m_selectedSub = table.getStringTopic("selected").subscribe("");
+    nt.addListener(m_selectedSub,
+        EnumSet.of(NetworkTableEvent.Kind.kValueAll, NetworkTableEvent.Kind.kImmediate),
+        event -> m_activePub.set(event.valueData.value.getString()));
+  }
+
+  /** @return the value of the selected option, or of the default option if none is selected */
+  public V getSelected() {
+    V value = m_selectedSub != null ? m_options.get(m_selectedSub.get()) : null;
+    return value != null ? value : m_options.get(m_defaultName);
+  }
+}
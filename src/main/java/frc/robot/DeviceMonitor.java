@@ -0,0 +1,263 @@
+package frc.robot;
+
+import com.revrobotics.REVLibError;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+
+/**
+ * How long each call into a device library takes (REVLib, the CANLight JNI, the LED driver), and
+ * whether the devices answer. The code that owns a device registers it with {@link #addDevice},
+ * adds a {@link Call} for each library call it makes, and records every call's duration and
+ * result. Recording only increments counters in a {@link TimingHistogram}, so it can be done on
+ * every call in the loop without allocating.
+ *
+ * <p>About once a second the robot thread publishes each call's p50/p99/max of the last window and
+ * its running call, error, timeout and slow counts to the "Devices" NetworkTables table, next to a
+ * health for each device: {@link #kIdle}, {@link #kOk}, {@link #kSlow} (a call took longer than its
+ * limit), {@link #kErrors} or {@link #kMissing} (every call in the window failed).
+ *
+ * <p>Calls may be recorded from any thread, the CANLight sends from its own. Each call is locked
+ * while it records and while it is published, never for long.
+ */
+public class DeviceMonitor {
+  /** Device health, see {@link Device#getHealth()}. */
+  public static final String kIdle = "idle";
+  public static final String kOk = "ok";
+  public static final String kSlow = "slow";
+  public static final String kErrors = "errors";
+  public static final String kMissing = "missing";
+
+  // 10 us buckets up to 10 ms, most device calls take tens of microseconds
+  private static final int kBucketWidthMicros = 10;
+  private static final int kBucketCount = 1000;
+  private static final int kMaxDevices = 16;
+  private static final int kMaxCalls = 8;
+
+  private final NetworkTable m_table;
+  private final int m_publishEvery;
+  private final Device[] m_devices = new Device[kMaxDevices];
+  private int m_deviceCount;
+  private int m_loopsSincePublish;
+
+  /**
+   * @param periodSeconds the robot loop period
+   * @param publishPeriodSeconds how often to publish
+   */
+  public DeviceMonitor(double periodSeconds, double publishPeriodSeconds) {
+    m_table = NetworkTableInstance.getDefault().getTable("Devices");
+    m_publishEvery = Math.max(1, (int) Math.round(publishPeriodSeconds / periodSeconds));
+  }
+
+  /** Register a device, call at init. The name is its key in the table, include the CAN ID. */
+  public synchronized Device addDevice(String name) {
+    if (m_deviceCount >= kMaxDevices)
+      throw new IllegalStateException("Too many devices, raise kMaxDevices.");
+    Device device = new Device(name, m_table.getSubTable(name));
+    m_devices[m_deviceCount++] = device;
+    return device;
+  }
+
+  /** Call once per loop from the robot thread, publishes once every publish period. */
+  public void periodic() {
+    if (++m_loopsSincePublish < m_publishEvery) return;
+    m_loopsSincePublish = 0;
+    publish();
+  }
+
+  private synchronized void publish() {
+    for (int i = 0; i < m_deviceCount; i++) {
+      m_devices[i].publish();
+    }
+  }
+
+  /** One device and the calls made into it. */
+  public static final class Device {
+    private final String m_name;
+    private final NetworkTable m_table;
+    private final StringPublisher m_healthPub;
+    private final Call[] m_calls = new Call[kMaxCalls];
+    private int m_callCount;
+    private volatile String m_health = kIdle;
+
+    /**
+     * A device that is measured but not published, for code that can run without a monitor.
+     * Its health is still worked out whenever {@link #update()} is called.
+     */
+    public Device(String name) {
+      this(name, null);
+    }
+
+    private Device(String name, NetworkTable table) {
+      m_name = name;
+      m_table = table;
+      m_healthPub = table != null ? table.getStringTopic("health").publish() : null;
+      if (m_healthPub != null) m_healthPub.set(kIdle);
+    }
+
+    /**
+     * Add a call made into this device.
+     *
+     * @param name name of the library call, for example "set" or "getPosition"
+     * @param slowMillis a call that takes longer than this is counted as slow
+     */
+    public synchronized Call addCall(String name, double slowMillis) {
+      if (m_callCount >= kMaxCalls)
+        throw new IllegalStateException("Too many calls on " + m_name + ", raise kMaxCalls.");
+      Call call = new Call(slowMillis, m_table != null ? m_table.getSubTable(name) : null);
+      m_calls[m_callCount++] = call;
+      return call;
+    }
+
+    /** Work out the health from the calls since the last update and start a new window. */
+    public synchronized void update() {
+      long calls = 0;
+      long failed = 0;
+      long slow = 0;
+      for (int i = 0; i < m_callCount; i++) {
+        Call call = m_calls[i];
+        synchronized (call) {
+          calls += call.m_windowCalls;
+          failed += call.m_windowFailed;
+          slow += call.m_windowSlow;
+          call.publishAndReset();
+        }
+      }
+      if (calls == 0) {
+        m_health = kIdle;
+      } else if (failed == calls) {
+        m_health = kMissing;
+      } else if (failed > 0) {
+        m_health = kErrors;
+      } else if (slow > 0) {
+        m_health = kSlow;
+      } else {
+        m_health = kOk;
+      }
+    }
+
+    private void publish() {
+      update();
+      m_healthPub.set(m_health);
+    }
+
+    /** @return the health over the last window, one of the constants in {@link DeviceMonitor} */
+    public String getHealth() {
+      return m_health;
+    }
+
+    public String getName() {
+      return m_name;
+    }
+  }
+
+  /**
+   * One library call on one device. Time the call with System.nanoTime() and pass the duration to
+   * one of the record methods, check for errors after taking the end time so the check is not
+   * counted.
+   */
+  public static final class Call {
+    private final long m_slowNanos;
+    private final TimingHistogram m_window = new TimingHistogram(kBucketWidthMicros, kBucketCount);
+    private long m_windowCalls;
+    private long m_windowFailed;
+    private long m_windowSlow;
+    private long m_calls;
+    private long m_errors;
+    private long m_timeouts;
+    private long m_slow;
+
+    private final DoublePublisher m_p50Pub;
+    private final DoublePublisher m_p99Pub;
+    private final DoublePublisher m_maxPub;
+    private final IntegerPublisher m_callsPub;
+    private final IntegerPublisher m_errorsPub;
+    private final IntegerPublisher m_timeoutsPub;
+    private final IntegerPublisher m_slowPub;
+
+    private Call(double slowMillis, NetworkTable table) {
+      m_slowNanos = (long) (slowMillis * 1e6);
+      if (table != null) {
+        m_p50Pub = table.getDoubleTopic("p50 ms").publish();
+        m_p99Pub = table.getDoubleTopic("p99 ms").publish();
+        m_maxPub = table.getDoubleTopic("max ms").publish();
+        m_callsPub = table.getIntegerTopic("calls").publish();
+        m_errorsPub = table.getIntegerTopic("errors").publish();
+        m_timeoutsPub = table.getIntegerTopic("timeouts").publish();
+        m_slowPub = table.getIntegerTopic("slow").publish();
+      } else {
+        m_p50Pub = null;
+        m_p99Pub = null;
+        m_maxPub = null;
+        m_callsPub = null;
+        m_errorsPub = null;
+        m_timeoutsPub = null;
+        m_slowPub = null;
+      }
+    }
+
+    /** Record a call that worked. */
+    public void record(long nanos) {
+      record(nanos, false, false);
+    }
+
+    /** Record a call that failed, for example a read that came back empty. */
+    public void recordError(long nanos) {
+      record(nanos, true, false);
+    }
+
+    /** Record a REVLib call with the error it left, kTimeout and kCANDisconnected count as timeouts. */
+    public void record(long nanos, REVLibError error) {
+      boolean timeout = error == REVLibError.kTimeout || error == REVLibError.kCANDisconnected;
+      record(nanos, error != REVLibError.kOk && !timeout, timeout);
+    }
+
+    private synchronized void record(long nanos, boolean error, boolean timeout) {
+      m_window.record(nanos);
+      m_windowCalls++;
+      m_calls++;
+      if (error) m_errors++;
+      if (timeout) m_timeouts++;
+      if (error || timeout) m_windowFailed++;
+      if (nanos > m_slowNanos) {
+        m_windowSlow++;
+        m_slow++;
+      }
+    }
+
+    // called with the lock held
+    private void publishAndReset() {
+      if (m_p50Pub != null) {
+        m_p50Pub.set(m_window.getPercentileMillis(0.5));
+        m_p99Pub.set(m_window.getPercentileMillis(0.99));
+        m_maxPub.set(m_window.getMaxMillis());
+        m_callsPub.set(m_calls);
+        m_errorsPub.set(m_errors);
+        m_timeoutsPub.set(m_timeouts);
+        m_slowPub.set(m_slow);
+      }
+      m_window.reset();
+      m_windowCalls = 0;
+      m_windowFailed = 0;
+      m_windowSlow = 0;
+    }
+
+    public synchronized long getCallCount() {
+      return m_calls;
+    }
+
+    public synchronized long getErrorCount() {
+      return m_errors;
+    }
+
+    public synchronized long getTimeoutCount() {
+      return m_timeouts;
+    }
+
+    public synchronized long getSlowCount() {
+      return m_slow;
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package frc.robot;
+
+import edu.wpi.first.wpilibj.drive.DifferentialDrive;
+import edu.wpi.first.wpilibj.motorcontrol.Spark;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+/**
+ * The two PWM Sparks driving the robot, one per side. A Subsystem so the auto commands can require
+ * it, but never registered with the scheduler since it has no periodic (see {@link Claw}).
+ */
+public class Drivetrain implements Subsystem {
+  private final Spark m_leftMotor = new Spark(0);
+  private final Spark m_rightMotor = new Spark(1);
+  private final DifferentialDrive m_robotDrive = new DifferentialDrive(m_leftMotor, m_rightMotor);
+  private double m_forward;
+  private double m_rotation;
+
+  public Drivetrain() {
+    //invert voltages of one of our motors
+    m_rightMotor.setInverted(true);
+  }
+
+  public void arcadeDrive(double forward, double rotation) {
+    m_forward = forward;
+    m_rotation = rotation;
+    m_robotDrive.arcadeDrive(forward, rotation);
+  }
+
+  public void stop() {
+    arcadeDrive(0, 0);
+  }
+
+  /** @return the forward speed from the last arcadeDrive call */
+  public double getForward() {
+    return m_forward;
+  }
+
+  /** @return the rotation from the last arcadeDrive call */
+  public double getRotation() {
+    return m_rotation;
+  }
+}
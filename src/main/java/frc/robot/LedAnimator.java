@@ -0,0 +1,211 @@
+package frc.robot;
+
+import edu.wpi.first.wpilibj.AddressableLED;
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/**
+ * Draws patterns on the addressable LED strip without allocating or pushing unchanged frames.
+ *
+ * <p>Patterns render into a back frame of packed 0xRRGGBB pixels, mostly by copying from frame
+ * tables built in the constructor. {@link #update()} compares the back frame with the frame last
+ * sent, one segment at a time, copies only the changed segments into the {@link
+ * AddressableLEDBuffer} and calls {@link AddressableLED#setData} only if something changed.
+ */
+public class LedAnimator {
+  public static final int kOff = 0x000000;
+  public static final int kRed = 0xFF0000;
+  public static final int kBlue = 0x0000FF;
+  public static final int kGreen = 0x00FF00;
+  public static final int kYellow = 0xFFC800;
+
+  // a chase is a lit block of this many pixels every kChaseSpacing pixels
+  private static final int kChaseWidth = 4;
+  private static final int kChaseSpacing = 12;
+  private static final double kChaseStepSeconds = 0.05;
+
+  private final AddressableLED m_led;
+  private final AddressableLEDBuffer m_buffer;
+  private final DeviceMonitor.Call m_setDataCall;
+  private final int m_length;
+  private final int m_segmentLength;
+  private final int[] m_back;
+  private final int[] m_front;
+  private long m_frameCount;
+
+  // frame tables
+  private final int[] m_offFrame;
+  private final int[] m_redFrame;
+  private final int[] m_blueFrame;
+  private final int[][] m_redChase;
+  private final int[][] m_blueChase;
+  private final int[] m_gaugeFrame;
+  private final int[] m_barFrame;
+
+  /**
+   * @param port PWM port, must be a PWM header, not MXP or DIO
+   * @param length number of pixels on the strip
+   * @param segmentLength number of pixels compared together when looking for changes
+   */
+  public LedAnimator(int port, int length, int segmentLength) {
+    this(port, length, segmentLength, new DeviceMonitor.Device("LEDs (PWM " + port + ")"));
+  }
+
+  /**
+   * @param port see {@link #LedAnimator(int, int, int)}
+   * @param length number of pixels on the strip
+   * @param segmentLength number of pixels compared together when looking for changes
+   * @param device where the setData calls are timed, from {@link DeviceMonitor#addDevice(String)}
+   */
+  public LedAnimator(int port, int length, int segmentLength, DeviceMonitor.Device device) {
+    if (length <= 0 || segmentLength <= 0)
+      throw new IllegalArgumentException("Length and segment length must be positive.");
+    m_setDataCall = device.addCall("setData", 1);
+    m_length = length;
+    m_segmentLength = segmentLength;
+    m_back = new int[length];
+    m_front = new int[length];
+
+    m_offFrame = new int[length];
+    m_redFrame = solidFrame(kRed);
+    m_blueFrame = solidFrame(kBlue);
+    m_redChase = chaseFrames(kRed);
+    m_blueChase = chaseFrames(kBlue);
+
+    // gauge fades from green in the middle to red at both ends
+    m_gaugeFrame = new int[length];
+    int center = length / 2;
+    for (int i = 0; i < length; i++) {
+      double fromCenter = Math.abs(i - center) / (double) Math.max(1, center);
+      m_gaugeFrame[i] = lerp(kGreen, kRed, Math.min(1.0, fromCenter));
+    }
+
+    // bar fades from blue at the start to yellow at the end
+    m_barFrame = new int[length];
+    for (int i = 0; i < length; i++) {
+      m_barFrame[i] = lerp(kBlue, kYellow, i / (double) Math.max(1, length - 1));
+    }
+
+    // Length is expensive to set, so only set it once, then just update data
+    m_led = new AddressableLED(port);
+    m_buffer = new AddressableLEDBuffer(length);
+    m_led.setLength(length);
+    m_led.setData(m_buffer);
+    m_led.start();
+  }
+
+  private int[] solidFrame(int color) {
+    int[] frame = new int[m_length];
+    for (int i = 0; i < m_length; i++) {
+      frame[i] = color;
+    }
+    return frame;
+  }
+
+  private int[][] chaseFrames(int color) {
+    int[][] frames = new int[kChaseSpacing][m_length];
+    for (int step = 0; step < kChaseSpacing; step++) {
+      for (int i = 0; i < m_length; i++) {
+        frames[step][i] = ((i + kChaseSpacing - step) % kChaseSpacing) < kChaseWidth ? color : kOff;
+      }
+    }
+    return frames;
+  }
+
+  private static int lerp(int from, int to, double t) {
+    int r = (int) Math.round(((from >> 16) & 0xFF) + (((to >> 16) & 0xFF) - ((from >> 16) & 0xFF)) * t);
+    int g = (int) Math.round(((from >> 8) & 0xFF) + (((to >> 8) & 0xFF) - ((from >> 8) & 0xFF)) * t);
+    int b = (int) Math.round((from & 0xFF) + ((to & 0xFF) - (from & 0xFF)) * t);
+    return (r << 16) | (g << 8) | b;
+  }
+
+  /** Fill the strip with one color. */
+  public void solid(int color) {
+    for (int i = 0; i < m_length; i++) {
+      m_back[i] = color;
+    }
+  }
+
+  /** Fill the strip with the alliance color, blue if the alliance is not known yet. */
+  public void alliance(Alliance alliance) {
+    System.arraycopy(alliance == Alliance.Red ? m_redFrame : m_blueFrame, 0, m_back, 0, m_length);
+  }
+
+  /** Blocks of the alliance color moving along the strip. */
+  public void chase(Alliance alliance, double timestamp) {
+    int[][] frames = alliance == Alliance.Red ? m_redChase : m_blueChase;
+    int step = (int) ((long) (timestamp / kChaseStepSeconds) % kChaseSpacing);
+    System.arraycopy(frames[step], 0, m_back, 0, m_length);
+  }
+
+  /**
+   * Light from the middle of the strip towards one end, green near the middle and red further
+   * out. Used to show how far the robot is tilted.
+   *
+   * @param value from -1 (all the way to the start of the strip) to 1 (all the way to the end)
+   */
+  public void gauge(double value) {
+    value = Math.max(-1, Math.min(1, value));
+    int center = m_length / 2;
+    int lit = (int) Math.round(Math.abs(value) * center);
+    int from = value >= 0 ? center : center - lit;
+    int to = value >= 0 ? Math.min(m_length, center + lit) : center;
+    System.arraycopy(m_offFrame, 0, m_back, 0, m_length);
+    System.arraycopy(m_gaugeFrame, from, m_back, from, to - from);
+    // always show the center so a level robot is not a dark strip
+    m_back[center] = kGreen;
+  }
+
+  /**
+   * Light the strip from the start up to where value falls between min and max. Used to show
+   * the arm position.
+   */
+  public void bar(double value, double min, double max) {
+    double fraction = max > min ? (value - min) / (max - min) : 0;
+    int lit = (int) Math.round(Math.max(0, Math.min(1, fraction)) * m_length);
+    System.arraycopy(m_barFrame, 0, m_back, 0, lit);
+    System.arraycopy(m_offFrame, lit, m_back, lit, m_length - lit);
+  }
+
+  /**
+   * Send the rendered frame to the strip if it changed since the last update.
+   *
+   * @return true if the strip was written
+   */
+  public boolean update() {
+    boolean changed = false;
+    for (int start = 0; start < m_length; start += m_segmentLength) {
+      int end = Math.min(m_length, start + m_segmentLength);
+      if (segmentEquals(start, end)) continue;
+      for (int i = start; i < end; i++) {
+        int color = m_back[i];
+        m_front[i] = color;
+        m_buffer.setRGB(i, (color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF);
+      }
+      changed = true;
+    }
+    if (changed) {
+      long start = System.nanoTime();
+      m_led.setData(m_buffer);
+      m_setDataCall.record(System.nanoTime() - start);
+      m_frameCount++;
+    }
+    return changed;
+  }
+
+  private boolean segmentEquals(int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (m_back[i] != m_front[i]) return false;
+    }
+    return true;
+  }
+
+  /** @return how many frames have actually been sent to the strip */
+  public long getFrameCount() {
+    return m_frameCount;
+  }
+
+  public int getLength() {
+    return m_length;
+  }
+}
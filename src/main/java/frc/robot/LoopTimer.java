@@ -0,0 +1,184 @@
+package frc.robot;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+
+/**
+ * Always-on timing of the phases of each robot loop. Phases are timed exclusively: starting a
+ * phase inside another pauses the outer one, so the motor sets inside teleopPeriodic are not also
+ * counted as mode periodic time. Whatever part of the loop is not inside any phase (WPILib's own
+ * LiveWindow/Shuffleboard/NetworkTables work) is counted as "Other".
+ *
+ * <p>Each phase records into a {@link TimingHistogram}. The p50/p99/max of the last publish window
+ * are published to the "LoopTiming" NetworkTables table about once a second. When a loop takes
+ * longer than the robot period, the phase that took the most time in that loop is blamed and
+ * published straight away.
+ */
+public class LoopTimer {
+  public static final int kModePeriodic = 0;
+  public static final int kRobotPeriodic = 1;
+  public static final int kDashboard = 2;
+  public static final int kMotors = 3;
+  public static final int kLeds = 4;
+  public static final int kScheduler = 5;
+  public static final int kOther = 6;
+  private static final int kPhaseCount = 7;
+  private static final String[] kPhaseNames = {
+    "Mode Periodic", "Robot Periodic", "Dashboard", "Motors", "LEDs", "Scheduler", "Other"
+  };
+
+  // 50 us buckets up to 40 ms, plenty of resolution around a 20 ms loop
+  private static final int kBucketWidthMicros = 50;
+  private static final int kBucketCount = 800;
+  private static final int kMaxDepth = 8;
+
+  private final long m_periodNanos;
+  private final int m_publishEvery;
+  private final TimingHistogram[] m_histograms = new TimingHistogram[kPhaseCount];
+  private final TimingHistogram m_loopHistogram = new TimingHistogram(kBucketWidthMicros, kBucketCount);
+  private final long[] m_tickNanos = new long[kPhaseCount];
+  private final boolean[] m_ranThisTick = new boolean[kPhaseCount];
+  private final long[] m_overrunsByPhase = new long[kPhaseCount];
+  private final int[] m_stack = new int[kMaxDepth];
+  private int m_depth;
+  private long m_phaseStart;
+  private long m_loopStart;
+  private long m_overruns;
+  private int m_loopsSincePublish;
+
+  private final DoublePublisher[] m_p50Pub = new DoublePublisher[kPhaseCount];
+  private final DoublePublisher[] m_p99Pub = new DoublePublisher[kPhaseCount];
+  private final DoublePublisher[] m_maxPub = new DoublePublisher[kPhaseCount];
+  private final IntegerPublisher[] m_overrunPub = new IntegerPublisher[kPhaseCount];
+  private final DoublePublisher m_loopP50Pub;
+  private final DoublePublisher m_loopP99Pub;
+  private final DoublePublisher m_loopMaxPub;
+  private final IntegerPublisher m_overrunCountPub;
+  private final StringPublisher m_lastOverrunPub;
+  private final DoublePublisher m_lastOverrunTimePub;
+
+  /**
+   * @param periodSeconds the robot loop period, a loop longer than this counts as an overrun
+   * @param publishPeriodSeconds how often to publish the histograms
+   */
+  public LoopTimer(double periodSeconds, double publishPeriodSeconds) {
+    m_periodNanos = (long) (periodSeconds * 1e9);
+    m_publishEvery = Math.max(1, (int) Math.round(publishPeriodSeconds / periodSeconds));
+
+    NetworkTable table = NetworkTableInstance.getDefault().getTable("LoopTiming");
+    for (int i = 0; i < kPhaseCount; i++) {
+      m_histograms[i] = new TimingHistogram(kBucketWidthMicros, kBucketCount);
+      m_p50Pub[i] = table.getDoubleTopic(kPhaseNames[i] + "/p50 ms").publish();
+      m_p99Pub[i] = table.getDoubleTopic(kPhaseNames[i] + "/p99 ms").publish();
+      m_maxPub[i] = table.getDoubleTopic(kPhaseNames[i] + "/max ms").publish();
+      m_overrunPub[i] = table.getIntegerTopic(kPhaseNames[i] + "/overruns").publish();
+    }
+    m_loopP50Pub = table.getDoubleTopic("Loop/p50 ms").publish();
+    m_loopP99Pub = table.getDoubleTopic("Loop/p99 ms").publish();
+    m_loopMaxPub = table.getDoubleTopic("Loop/max ms").publish();
+    m_overrunCountPub = table.getIntegerTopic("Loop/overruns").publish();
+    m_lastOverrunPub = table.getStringTopic("Loop/last overrun phase").publish();
+    m_lastOverrunTimePub = table.getDoubleTopic("Loop/last overrun ms").publish();
+    m_lastOverrunPub.set("");
+  }
+
+  /** Call at the very start of the loop, before anything else runs. */
+  public void startLoop() {
+    for (int i = 0; i < kPhaseCount; i++) {
+      m_tickNanos[i] = 0;
+      m_ranThisTick[i] = false;
+    }
+    m_depth = 0;
+    m_loopStart = System.nanoTime();
+  }
+
+  /** Start timing a phase, pausing the phase that is currently running (if any). */
+  public void start(int phase) {
+    long now = System.nanoTime();
+    if (m_depth > 0) {
+      m_tickNanos[m_stack[m_depth - 1]] += now - m_phaseStart;
+    }
+    if (m_depth < kMaxDepth) {
+      m_stack[m_depth] = phase;
+    }
+    m_depth++;
+    m_ranThisTick[phase] = true;
+    m_phaseStart = now;
+  }
+
+  /** Stop the phase started last and resume the one it interrupted. */
+  public void stop() {
+    if (m_depth == 0) return;
+    long now = System.nanoTime();
+    m_depth--;
+    if (m_depth < kMaxDepth) {
+      m_tickNanos[m_stack[m_depth]] += now - m_phaseStart;
+    }
+    m_phaseStart = now;
+  }
+
+  /** Call at the very end of the loop. Records the phases and blames a phase on an overrun. */
+  public void endLoop() {
+    long total = System.nanoTime() - m_loopStart;
+    // close anything left open, for example by an exception in a periodic function
+    while (m_depth > 0) {
+      stop();
+    }
+
+    long accounted = 0;
+    for (int i = 0; i < kOther; i++) {
+      accounted += m_tickNanos[i];
+    }
+    m_tickNanos[kOther] = Math.max(0, total - accounted);
+    m_ranThisTick[kOther] = true;
+
+    m_loopHistogram.record(total);
+    for (int i = 0; i < kPhaseCount; i++) {
+      if (m_ranThisTick[i]) {
+        m_histograms[i].record(m_tickNanos[i]);
+      }
+    }
+
+    if (total > m_periodNanos) {
+      int worst = 0;
+      for (int i = 1; i < kPhaseCount; i++) {
+        if (m_tickNanos[i] > m_tickNanos[worst]) worst = i;
+      }
+      m_overruns++;
+      m_overrunsByPhase[worst]++;
+      m_lastOverrunPub.set(kPhaseNames[worst]);
+      m_lastOverrunTimePub.set(total / 1e6);
+      m_overrunCountPub.set(m_overruns);
+      m_overrunPub[worst].set(m_overrunsByPhase[worst]);
+    }
+
+    m_loopsSincePublish++;
+    if (m_loopsSincePublish >= m_publishEvery) {
+      m_loopsSincePublish = 0;
+      publish();
+    }
+  }
+
+  private void publish() {
+    for (int i = 0; i < kPhaseCount; i++) {
+      TimingHistogram histogram = m_histograms[i];
+      m_p50Pub[i].set(histogram.getPercentileMillis(0.5));
+      m_p99Pub[i].set(histogram.getPercentileMillis(0.99));
+      m_maxPub[i].set(histogram.getMaxMillis());
+      m_overrunPub[i].set(m_overrunsByPhase[i]);
+      histogram.reset();
+    }
+    m_loopP50Pub.set(m_loopHistogram.getPercentileMillis(0.5));
+    m_loopP99Pub.set(m_loopHistogram.getPercentileMillis(0.99));
+    m_loopMaxPub.set(m_loopHistogram.getMaxMillis());
+    m_overrunCountPub.set(m_overruns);
+    m_loopHistogram.reset();
+  }
+
+  public long getOverrunCount() {
+    return m_overruns;
+  }
+}
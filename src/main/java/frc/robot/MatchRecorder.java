@@ -0,0 +1,380 @@
+package frc.robot;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringSubscriber;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every input the robot code reads, once per loop, so a match can be played back through
+ * {@link Robot} in simulation with {@link MatchReplay}. A frame holds the driver station state
+ * (mode, alliance station, match time), the axes and buttons of both controllers, the
+ * accelerometer sample autoBalance used and the shoulder encoder position read by each of the
+ * shoulder's periodic calls since the last loop, so the shoulder control can be replayed step by
+ * step. Dashboard chooser selections are written as separate records when they change.
+ *
+ * <p>The file is a small binary format, about 100 bytes per loop. Like {@link RobotLogger}, the
+ * robot thread only copies the frame into a preallocated ring buffer and a background thread
+ * writes the file, frames are dropped and counted if the ring fills up.
+ */
+public class MatchRecorder {
+  static final int kMagic = 0x46524352; // "FRCR"
+  static final int kVersion = 2;
+  static final byte kFrameRecord = 'F';
+  static final byte kSelectionRecord = 'S';
+
+  static final int kControllers = 2;
+  static final int kAxes = 6;
+
+  static final int kEnabled = 1;
+  static final int kAutonomous = 1 << 1;
+  static final int kTest = 1 << 2;
+  static final int kDsAttached = 1 << 3;
+  static final int kFmsAttached = 1 << 4;
+  static final int kEStopped = 1 << 5;
+
+  static final int kShoulderSamples = ShoulderController.kMaxSamples;
+
+  // timestamp, control word, station, match time, controllers, accelerometer, shoulder samples
+  static final int kFrameBytes = 8 + 1 + 1 + 4 + kControllers * (1 + 2 * kAxes + 1 + 4) + 3 * 4
+      + 1 + kShoulderSamples * 4;
+
+  private static final long kDrainPeriodNanos = 20_000_000;
+  private static final int kFlushEvery = 50;
+
+  private final String[] m_choosers;
+  private final int m_capacity;
+  private final byte[] m_ring;
+  private final ByteBuffer m_buffer;
+  private final ConcurrentLinkedQueue<Selection> m_selections = new ConcurrentLinkedQueue<>();
+  private final StringSubscriber[] m_chooserSubs;
+  private final int[] m_listeners;
+  private final DataOutputStream m_out;
+  private final Thread m_thread;
+
+  // written only by the robot thread
+  private volatile long m_written;
+  private volatile long m_dropped;
+  // written only by the writer thread
+  private volatile long m_read;
+  private volatile boolean m_running = true;
+  private volatile IOException m_error;
+
+  /** A dashboard chooser changed, applies from frame onwards. */
+  private static final class Selection {
+    final long frame;
+    final int chooser;
+    final String value;
+
+    Selection(long frame, int chooser, String value) {
+      this.frame = frame;
+      this.chooser = chooser;
+      this.value = value;
+    }
+  }
+
+  /**
+   * @param file where to write, replaced if it exists
+   * @param period the robot loop period in seconds, stored so replay steps time the same way
+   * @param capacity how many frames can be buffered before frames are dropped
+   * @param choosers SmartDashboard keys of the choosers whose selections are recorded
+   */
+  public MatchRecorder(Path file, double period, int capacity, String... choosers) throws IOException {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Capacity must be at least 1.");
+    m_choosers = choosers.clone();
+    m_capacity = capacity;
+    m_ring = new byte[capacity * kFrameBytes];
+    m_buffer = ByteBuffer.wrap(m_ring);
+
+    if (file.getParent() != null) Files.createDirectories(file.getParent());
+    m_out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    m_out.writeInt(kMagic);
+    m_out.writeShort(kVersion);
+    m_out.writeFloat((float) period);
+    m_out.writeByte(m_choosers.length);
+    for (String chooser : m_choosers) {
+      m_out.writeUTF(chooser);
+    }
+
+    // selections only change when someone clicks on the dashboard, listen instead of polling
+    NetworkTableInstance nt = NetworkTableInstance.getDefault();
+    m_chooserSubs = new StringSubscriber[m_choosers.length];
+    m_listeners = new int[m_choosers.length];
+    for (int i = 0; i < m_choosers.length; i++) {
+      int chooser = i;
+      m_chooserSubs[i] = nt.getTable("SmartDashboard").getSubTable(m_choosers[i])
+          .getStringTopic("selected").subscribe("");
+      m_listeners[i] = nt.addListener(m_chooserSubs[i],
+          EnumSet.of(NetworkTableEvent.Kind.kValueAll, NetworkTableEvent.Kind.kImmediate),
+          event -> m_selections.add(new Selection(m_written, chooser, event.valueData.value.getString())));
+    }
+
+    m_thread = new Thread(this::run, "MatchRecorder");
+    m_thread.setDaemon(true);
+    m_thread.start();
+  }
+
+  /**
+   * Record this loop's inputs. The driver station and controller values are read here, they stay
+   * the same for the whole loop.
+   *
+   * @param accelX accelerometer sample used this loop, in g
+   * @param shoulderPositions shoulder encoder position read by each shoulder periodic call since
+   *     the last loop, in rotations, see {@link ShoulderController#getSamples()}
+   * @param shoulderCount how many of shoulderPositions are valid, more than kShoulderSamples are
+   *     not recorded
+   */
+  public void record(double accelX, double accelY, double accelZ, double[] shoulderPositions,
+      int shoulderCount) {
+    long written = m_written;
+    if (written - m_read >= m_capacity) {
+      m_dropped++;
+      return;
+    }
+    ByteBuffer buffer = m_buffer;
+    int index = (int) (written % m_capacity) * kFrameBytes;
+
+    buffer.putLong(index, RobotController.getFPGATime());
+    index += 8;
+    int control = 0;
+    if (DriverStation.isEnabled()) control |= kEnabled;
+    if (DriverStation.isAutonomous()) control |= kAutonomous;
+    if (DriverStation.isTest()) control |= kTest;
+    if (DriverStation.isDSAttached()) control |= kDsAttached;
+    if (DriverStation.isFMSAttached()) control |= kFmsAttached;
+    if (DriverStation.isEStopped()) control |= kEStopped;
+    buffer.put(index++, (byte) control);
+    buffer.put(index++, (byte) stationIndex());
+    buffer.putFloat(index, (float) DriverStation.getMatchTime());
+    index += 4;
+
+    for (int port = 0; port < kControllers; port++) {
+      int axes = Math.min(kAxes, DriverStation.getStickAxisCount(port));
+      buffer.put(index++, (byte) axes);
+      for (int axis = 0; axis < kAxes; axis++) {
+        double value = axis < axes ? DriverStation.getStickAxis(port, axis) : 0;
+        buffer.putShort(index, (short) Math.round(Math.max(-1, Math.min(1, value)) * Short.MAX_VALUE));
+        index += 2;
+      }
+      buffer.put(index++, (byte) DriverStation.getStickButtonCount(port));
+      buffer.putInt(index, DriverStation.getStickButtons(port));
+      index += 4;
+    }
+
+    buffer.putFloat(index, (float) accelX);
+    buffer.putFloat(index + 4, (float) accelY);
+    buffer.putFloat(index + 8, (float) accelZ);
+    index += 12;
+    int count = Math.min(kShoulderSamples, shoulderCount);
+    buffer.put(index++, (byte) count);
+    for (int i = 0; i < kShoulderSamples; i++) {
+      buffer.putFloat(index, i < count ? (float) shoulderPositions[i] : 0);
+      index += 4;
+    }
+    m_written = written + 1;
+  }
+
+  private static int stationIndex() {
+    int location = DriverStation.getLocation();
+    if (location < 1 || location > 3) return -1;
+    switch (DriverStation.getAlliance()) {
+      case Red:
+        return AllianceStationID.Red1.ordinal() + location - 1;
+      case Blue:
+        return AllianceStationID.Blue1.ordinal() + location - 1;
+      default:
+        return -1;
+    }
+  }
+
+  private void run() {
+    int drains = 0;
+    try {
+      while (m_running) {
+        drain();
+        if (++drains % kFlushEvery == 0) m_out.flush();
+        LockSupport.parkNanos(kDrainPeriodNanos);
+      }
+      drain();
+      m_out.close();
+    } catch (IOException ex) {
+      m_error = ex;
+    }
+  }
+
+  private void drain() throws IOException {
+    long read = m_read;
+    long written = m_written;
+    while (read < written) {
+      Selection selection;
+      while ((selection = m_selections.peek()) != null && selection.frame <= read) {
+        m_selections.poll();
+        m_out.writeByte(kSelectionRecord);
+        m_out.writeByte(selection.chooser);
+        m_out.writeUTF(selection.value);
+      }
+      m_out.writeByte(kFrameRecord);
+      m_out.write(m_ring, (int) (read % m_capacity) * kFrameBytes, kFrameBytes);
+      read++;
+      m_read = read;
+    }
+  }
+
+  /** @return how many loops were not recorded because the ring buffer was full */
+  public long getDroppedCount() {
+    return m_dropped;
+  }
+
+  /** @return the write error that stopped the recording, null if there was none */
+  public IOException getError() {
+    return m_error;
+  }
+
+  /** Write whatever is buffered, close the file and stop listening to the dashboard. */
+  public void close() {
+    NetworkTableInstance nt = NetworkTableInstance.getDefault();
+    for (int i = 0; i < m_listeners.length; i++) {
+      nt.removeListener(m_listeners[i]);
+      m_chooserSubs[i].close();
+    }
+    m_running = false;
+    LockSupport.unpark(m_thread);
+    try {
+      m_thread.join(1000);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** One loop of a recording, read back by {@link Reader}. Fields are reused between frames. */
+  public static final class Frame {
+    public long timestamp;
+    public int control;
+    /** AllianceStationID ordinal, -1 if unknown. */
+    public int station;
+    public double matchTime;
+    public final int[] axisCounts = new int[kControllers];
+    public final double[][] axes = new double[kControllers][kAxes];
+    public final int[] buttonCounts = new int[kControllers];
+    public final int[] buttons = new int[kControllers];
+    public double accelX;
+    public double accelY;
+    public double accelZ;
+    /** Shoulder positions in the order the shoulder's periodic read them, may be none. */
+    public int shoulderCount;
+    public final double[] shoulderPositions = new double[kShoulderSamples];
+
+    public boolean isSet(int flag) {
+      return (control & flag) != 0;
+    }
+
+    void read(DataInputStream in) throws IOException {
+      timestamp = in.readLong();
+      control = in.readUnsignedByte();
+      station = in.readByte();
+      matchTime = in.readFloat();
+      for (int port = 0; port < kControllers; port++) {
+        axisCounts[port] = in.readUnsignedByte();
+        for (int axis = 0; axis < kAxes; axis++) {
+          axes[port][axis] = in.readShort() / (double) Short.MAX_VALUE;
+        }
+        buttonCounts[port] = in.readUnsignedByte();
+        buttons[port] = in.readInt();
+      }
+      accelX = in.readFloat();
+      accelY = in.readFloat();
+      accelZ = in.readFloat();
+      shoulderCount = in.readUnsignedByte();
+      for (int i = 0; i < kShoulderSamples; i++) {
+        shoulderPositions[i] = in.readFloat();
+      }
+    }
+  }
+
+  /** Reads a recording written by {@link MatchRecorder}, one frame at a time. */
+  public static final class Reader implements AutoCloseable {
+    private final DataInputStream m_in;
+    private final double m_period;
+    private final String[] m_choosers;
+    private final String[] m_selections;
+    private final boolean[] m_changed;
+    private final Frame m_frame = new Frame();
+
+    public Reader(Path file) throws IOException {
+      m_in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+      if (m_in.readInt() != kMagic)
+        throw new IOException(file + " is not a match recording.");
+      int version = m_in.readShort();
+      if (version != kVersion)
+        throw new IOException("Unsupported recording version " + version + ".");
+      m_period = m_in.readFloat();
+      m_choosers = new String[m_in.readUnsignedByte()];
+      for (int i = 0; i < m_choosers.length; i++) {
+        m_choosers[i] = m_in.readUTF();
+      }
+      m_selections = new String[m_choosers.length];
+      m_changed = new boolean[m_choosers.length];
+    }
+
+    /** @return the next frame, or null at the end of the recording */
+    public Frame next() throws IOException {
+      Arrays.fill(m_changed, false);
+      try {
+        while (true) {
+          byte type = m_in.readByte();
+          if (type == kFrameRecord) {
+            m_frame.read(m_in);
+            return m_frame;
+          } else if (type == kSelectionRecord) {
+            int chooser = m_in.readUnsignedByte();
+            m_selections[chooser] = m_in.readUTF();
+            m_changed[chooser] = true;
+          } else {
+            throw new IOException("Corrupt recording, unknown record type " + type + ".");
+          }
+        }
+      } catch (EOFException ex) {
+        // the robot can lose power in the middle of a record
+        return null;
+      }
+    }
+
+    public double getPeriod() {
+      return m_period;
+    }
+
+    public String[] getChoosers() {
+      return m_choosers.clone();
+    }
+
+    /** @return true if the chooser's selection changed just before the last frame */
+    public boolean selectionChanged(int chooser) {
+      return m_changed[chooser];
+    }
+
+    public String getSelection(int chooser) {
+      return m_selections[chooser];
+    }
+
+    @Override
+    public void close() throws IOException {
+      m_in.close();
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package frc.robot;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.wpilibj.simulation.BuiltInAccelerometerSim;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Plays a {@link MatchRecorder} file back through {@link Robot} in simulation. Simulated time is
+ * paused and stepped by hand, one recorded loop at a time, so the robot code sees exactly the
+ * recorded inputs at exactly the recorded loop times and the replay runs as fast as the code does.
+ * Two replays of the same file make the same outputs, so the wpilog written by the replay can be
+ * compared before and after a change, and the loop times printed at the end show where a real
+ * match trace spends its time.
+ *
+ * <p>Each loop the recorded driver station state and controllers go into DriverStationSim, the
+ * accelerometer sample into BuiltInAccelerometerSim and changed chooser selections onto their
+ * NetworkTables topics. Then the shoulder's 5 ms periodic is stepped once for each position it read
+ * on the robot, with that position in the encoder, and the robot loop runs once.
+ *
+ * <p>Every frame is replayed one loop period after the last. Where the recording has a gap (frames
+ * dropped because the ring buffer was full, or the driver station was not attached) the replay
+ * carries on as if no time had passed, so it warns about every gap longer than a period.
+ *
+ * <p>Run with {@code ./gradlew replayMatch -Pmatch=path/to/match.rec}.
+ */
+public final class MatchReplay {
+  private MatchReplay() {}
+
+  /** What a replay did, loop times are the wall clock time of each robot loop. */
+  public static final class Summary {
+    public final long loops;
+    public final double matchSeconds;
+    public final double wallSeconds;
+    public final TimingHistogram loopTimes;
+    /** Times the recorded timestamps jumped by more than a period, see {@link MatchReplay}. */
+    public final long gaps;
+
+    Summary(long loops, double matchSeconds, double wallSeconds, TimingHistogram loopTimes, long gaps) {
+      this.loops = loops;
+      this.gaps = gaps;
+      this.matchSeconds = matchSeconds;
+      this.wallSeconds = wallSeconds;
+      this.loopTimes = loopTimes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d loops, %.1f s of robot time in %.1f s (%.0fx), loop p50 %.3f ms, p99 %.3f ms, max %.3f ms, %d gaps",
+          loops, matchSeconds, wallSeconds, matchSeconds / wallSeconds,
+          loopTimes.getPercentileMillis(0.5), loopTimes.getPercentileMillis(0.99), loopTimes.getMaxMillis(), gaps);
+    }
+  }
+
+  /** Replay a recording through a new {@link Robot}. Needs the HAL simulation, call once per JVM. */
+  public static Summary replay(Path file) throws IOException {
+    if (!HAL.initialize(500, 0))
+      throw new IllegalStateException("Failed to initialize the HAL.");
+    SimHooks.pauseTiming();
+
+    try (MatchRecorder.Reader reader = new MatchRecorder.Reader(file)) {
+      double period = reader.getPeriod();
+      int shoulderSteps = Math.max(1, (int) Math.round(period / ShoulderController.kPeriod));
+      String[] choosers = reader.getChoosers();
+      StringPublisher[] selections = new StringPublisher[choosers.length];
+      for (int i = 0; i < choosers.length; i++) {
+        selections[i] = NetworkTableInstance.getDefault().getTable("SmartDashboard")
+            .getSubTable(choosers[i]).getStringTopic("selected").publish();
+      }
+
+      Robot robot = new Robot(period, true);
+      robot.robotInit();
+      //the LEDs and dashboard come up in the background on the robot, a replay has them from the start
+      if (!robot.awaitBackgroundInit(10))
+        throw new IllegalStateException("The robot's background init did not finish.");
+      robot.simulationInit();
+      ShoulderController shoulder = robot.getShoulder();
+      BuiltInAccelerometerSim accel = new BuiltInAccelerometerSim();
+      TimingHistogram loopTimes = new TimingHistogram(10, 5000);
+      AllianceStationID[] stations = AllianceStationID.values();
+
+      long loops = 0;
+      long gaps = 0;
+      long lastTimestamp = 0;
+      long maxStepMicros = Math.round(2 * period * 1e6);
+      long start = System.nanoTime();
+      MatchRecorder.Frame frame;
+      while ((frame = reader.next()) != null) {
+        if (loops > 0 && frame.timestamp - lastTimestamp > maxStepMicros) {
+          gaps++;
+          System.err.printf("Gap of %.3f s in the recording at %.3f s, replayed as one period%n",
+              (frame.timestamp - lastTimestamp) / 1e6, frame.timestamp / 1e6);
+        }
+        lastTimestamp = frame.timestamp;
+
+        for (int i = 0; i < choosers.length; i++) {
+          if (reader.selectionChanged(i)) selections[i].set(reader.getSelection(i));
+        }
+
+        DriverStationSim.setEnabled(frame.isSet(MatchRecorder.kEnabled));
+        DriverStationSim.setAutonomous(frame.isSet(MatchRecorder.kAutonomous));
+        DriverStationSim.setTest(frame.isSet(MatchRecorder.kTest));
+        DriverStationSim.setDsAttached(frame.isSet(MatchRecorder.kDsAttached));
+        DriverStationSim.setFmsAttached(frame.isSet(MatchRecorder.kFmsAttached));
+        DriverStationSim.setEStop(frame.isSet(MatchRecorder.kEStopped));
+        if (frame.station >= 0 && frame.station < stations.length) {
+          DriverStationSim.setAllianceStationId(stations[frame.station]);
+        }
+        DriverStationSim.setMatchTime(frame.matchTime);
+        for (int port = 0; port < MatchRecorder.kControllers; port++) {
+          DriverStationSim.setJoystickAxisCount(port, frame.axisCounts[port]);
+          for (int axis = 0; axis < frame.axisCounts[port]; axis++) {
+            DriverStationSim.setJoystickAxis(port, axis, frame.axes[port][axis]);
+          }
+          DriverStationSim.setJoystickButtonCount(port, frame.buttonCounts[port]);
+          DriverStationSim.setJoystickButtons(port, frame.buttons[port]);
+        }
+        DriverStationSim.notifyNewData();
+
+        //the robot's own simulationPeriodic wrote the charge station model, the recording wins
+        accel.setX(frame.accelX);
+        accel.setY(frame.accelY);
+        accel.setZ(frame.accelZ);
+
+        //the shoulder runs on its own periodic on the robot, step it as many times as it ran there,
+        //each time with the position it read
+        int steps = frame.shoulderCount > 0 ? frame.shoulderCount : shoulderSteps;
+        for (int i = 0; i < steps; i++) {
+          if (i < frame.shoulderCount) shoulder.setSimulatedPosition(frame.shoulderPositions[i]);
+          SimHooks.stepTiming(period / steps);
+          shoulder.controlPeriodic();
+        }
+
+        long loopStart = System.nanoTime();
+        robot.loopFunc();
+        loopTimes.record(System.nanoTime() - loopStart);
+        loops++;
+      }
+
+      double wallSeconds = (System.nanoTime() - start) / 1e9;
+      return new Summary(loops, loops * period, wallSeconds, loopTimes, gaps);
+    }
+  }
+
+  public static void main(String... args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: MatchReplay <match.rec>");
+      System.exit(1);
+    }
+    System.out.println(replay(Paths.get(args[0])));
+    System.exit(0);
+  }
+}
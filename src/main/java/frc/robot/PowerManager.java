@@ -0,0 +1,183 @@
+package frc.robot;
+
+import edu.wpi.first.wpilibj.RobotController;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Turns the motors down before the battery sags far enough to brown the rio out. Every loop it
+ * reads the battery voltage and the current each consumer draws, predicts the voltage the battery
+ * would drop to if every consumer got what it asks for, and when that is less than 1.25 V above
+ * the rio's brownout voltage it hands out the current the battery can
+ * still supply by priority: the shoulder first (letting the arm fall is worse than slowing down),
+ * then the claw (so it keeps its grip), and the drive gets what is left.
+ *
+ * <p>The battery is modelled as a voltage source behind a fixed resistance. Its open circuit
+ * voltage is estimated from the measured voltage and current, so a tired battery is throttled
+ * sooner. The drive's PWM controllers cannot report current, so its demand comes from the output
+ * asked for. Whatever sag the model cannot explain (a motor we do not know about) is counted as a
+ * load that cannot be throttled.
+ *
+ * <p>Scales drop at once and come back over about a second, so a throttled consumer drawing
+ * less current does not make the next loop think the problem went away. Each consumer keeps at
+ * least its floor, the driver never loses the robot completely.
+ *
+ * <p>Call {@link #update} from the robot thread once per loop before the motors are set. Nothing
+ * is allocated there.
+ */
+public class PowerManager {
+  /** Consumers, in the order they are throttled. */
+  public static final int kDrive = 0;
+  public static final int kClaw = 1;
+  public static final int kShoulder = 2;
+  private static final int kConsumerCount = 3;
+
+  /** Why the motors are throttled, see {@link #getReason()}. */
+  public static final String kNone = "none";
+  public static final String kPredictedSag = "predicted sag";
+  public static final String kBrownout = "browned out";
+
+  // battery and wiring, measure it with a battery analyzer when the battery is fresh
+  private static final double kResistance = 0.025;
+  // how far above the rio's brownout voltage the prediction has to stay
+  private static final double kMinVoltage = 1.25;
+  // current both drive sides draw at full output from a standstill
+  private static final double kDriveAmpsAtFullOutput = 120;
+  // per second, how fast a scale comes back once the battery can take it
+  private static final double kRecoveryRate = 1.0;
+  // seconds, how fast the open circuit voltage estimate follows the measurement
+  private static final double kVoltageTimeConstant = 1.0;
+
+  // the least each consumer is scaled to, in consumer order
+  private static final double[] kFloors = {0.3, 0.5, 0.6};
+
+  private final double m_targetVoltage;
+  private DoubleSupplier m_auxVoltage;
+
+  private final double[] m_demand = new double[kConsumerCount];
+  private final double[] m_scales = {1, 1, 1};
+  private double m_lastTimestamp = Double.NaN;
+  private double m_voltage;
+  private double m_openCircuitVoltage = Double.NaN;
+  private double m_predictedVoltage;
+  private double m_unmodeledCurrent;
+  private String m_reason = kNone;
+  private boolean m_brownedOut;
+  private int m_brownoutCount;
+
+  public PowerManager() {
+    m_targetVoltage = RobotController.getBrownoutVoltage() + kMinVoltage;
+  }
+
+  /**
+   * Also read the battery voltage from another device (a CANLight, for example), the lower of the
+   * two is used. A reading of 0 means the device is not connected and is ignored.
+   */
+  public void setAuxVoltageSource(DoubleSupplier voltage) {
+    m_auxVoltage = voltage;
+  }
+
+  /**
+   * Measure and work out this loop's scales.
+   *
+   * @param timestamp now, in seconds
+   * @param driveOutput the biggest output either drive side is asked for, 0 to 1, before scaling
+   * @param clawCurrent the claw's measured current, in amps
+   * @param shoulderCurrent the shoulder's measured current, in amps
+   */
+  public void update(double timestamp, double driveOutput, double clawCurrent, double shoulderCurrent) {
+    double dt = Double.isNaN(m_lastTimestamp) ? 0 : timestamp - m_lastTimestamp;
+    m_lastTimestamp = timestamp;
+
+    m_voltage = RobotController.getBatteryVoltage();
+    if (m_auxVoltage != null) {
+      double aux = m_auxVoltage.getAsDouble();
+      if (aux > 0) m_voltage = Math.min(m_voltage, aux);
+    }
+
+    // what each consumer would draw unthrottled, the measured currents are already scaled down
+    m_demand[kDrive] = Math.min(1, Math.abs(driveOutput)) * kDriveAmpsAtFullOutput;
+    m_demand[kClaw] = Math.abs(clawCurrent) / m_scales[kClaw];
+    m_demand[kShoulder] = Math.abs(shoulderCurrent) / m_scales[kShoulder];
+    double drawn = m_demand[kDrive] * m_scales[kDrive] + Math.abs(clawCurrent) + Math.abs(shoulderCurrent);
+
+    double openCircuit = m_voltage + kResistance * drawn;
+    if (Double.isNaN(m_openCircuitVoltage) || dt <= 0) {
+      m_openCircuitVoltage = openCircuit;
+    } else {
+      m_openCircuitVoltage += (openCircuit - m_openCircuitVoltage) * Math.min(1, dt / kVoltageTimeConstant);
+    }
+    m_unmodeledCurrent = Math.max(0, (m_openCircuitVoltage - m_voltage) / kResistance - drawn);
+
+    double demanded = m_unmodeledCurrent + m_demand[kDrive] + m_demand[kClaw] + m_demand[kShoulder];
+    m_predictedVoltage = m_openCircuitVoltage - kResistance * demanded;
+
+    boolean brownedOut = RobotController.isBrownedOut();
+    if (brownedOut && !m_brownedOut) m_brownoutCount++;
+    m_brownedOut = brownedOut;
+
+    // hand out what the battery can supply, highest priority first
+    double budget = (m_openCircuitVoltage - m_targetVoltage) / kResistance - m_unmodeledCurrent;
+    boolean throttled = false;
+    for (int i = kConsumerCount - 1; i >= 0; i--) {
+      double allowed = 1;
+      if (brownedOut) {
+        allowed = kFloors[i];
+      } else if (m_demand[i] > budget) {
+        allowed = Math.max(kFloors[i], budget / m_demand[i]);
+      }
+      budget -= m_demand[i] * allowed;
+      if (allowed < m_scales[i]) {
+        m_scales[i] = allowed;
+      } else {
+        m_scales[i] = Math.min(allowed, m_scales[i] + kRecoveryRate * dt);
+      }
+      if (m_scales[i] < 1) throttled = true;
+    }
+
+    if (brownedOut) {
+      m_reason = kBrownout;
+    } else if (throttled) {
+      m_reason = kPredictedSag;
+    } else {
+      m_reason = kNone;
+    }
+  }
+
+  /** @return what to multiply a consumer's output by, from its floor to 1 */
+  public double getScale(int consumer) {
+    return m_scales[consumer];
+  }
+
+  /** @return how much a consumer is throttled, in percent of its output */
+  public double getThrottlePercent(int consumer) {
+    return (1 - m_scales[consumer]) * 100;
+  }
+
+  /** @return one of {@link #kNone}, {@link #kPredictedSag} or {@link #kBrownout} */
+  public String getReason() {
+    return m_reason;
+  }
+
+  /** @return the battery voltage read last update, the lower of the rio's and the aux source's */
+  public double getVoltage() {
+    return m_voltage;
+  }
+
+  /** @return what the battery would drop to with every consumer unthrottled */
+  public double getPredictedVoltage() {
+    return m_predictedVoltage;
+  }
+
+  /** @return the current the model cannot account for, in amps */
+  public double getUnmodeledCurrent() {
+    return m_unmodeledCurrent;
+  }
+
+  /**
+   * @return how many times the rio has browned out. Spark MAXes and CANLights may have reset then,
+   * which loses their status frame periods and what they were showing.
+   */
+  public int getBrownoutCount() {
+    return m_brownoutCount;
+  }
+}
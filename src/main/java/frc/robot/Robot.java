@@ -6,33 +6,29 @@ package frc.robot;
 
 //ROBOT
 import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 
-//CAMERA
-import edu.wpi.first.cameraserver.CameraServer;
-import edu.wpi.first.cscore.UsbCamera;
+//COMMANDS
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 
-//PID + Encoder
-import com.revrobotics.RelativeEncoder;
-import edu.wpi.first.math.controller.PIDController;
-
-//CONTROLLER
-import edu.wpi.first.wpilibj.XboxController;
-
-//DRIVE TRAIN
-import edu.wpi.first.wpilibj.drive.DifferentialDrive;
+//LEDS
+import edu.wpi.first.wpilibj.DriverStation;
 
-//MOTOR CONTROLLERS
-import edu.wpi.first.wpilibj.motorcontrol.Spark;
-import com.revrobotics.CANSparkMax;
-import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+//LIVEWINDOW
+import edu.wpi.first.wpilibj.livewindow.LiveWindow;
 
-//SMART DASHBOARD
-import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+//LOGGING
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotController;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-//LEDS
-import edu.wpi.first.wpilibj.AddressableLED;
-import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+//SIMULATION
+import edu.wpi.first.wpilibj.BuiltInAccelerometer;
+import edu.wpi.first.wpilibj.simulation.BuiltInAccelerometerSim;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -41,68 +37,149 @@ import edu.wpi.first.wpilibj.AddressableLEDBuffer;
  * project.
  */
 public class Robot extends TimedRobot {
-  //create our variables and options for auton
-  private static final String kScoreAuto = "Score Auto";
-  private static final String kScoreAndDriveAuto = "Score + Drive Auto";
-  private static final String kScoreAndBalanceAuto = "Score + Balance Auto";
-  private static final String kBalanceAuto = "Balance Auto";
-  private String m_autoSelected;
-  private SendableChooser<String> m_chooser;
+  //default main loop period in seconds, the robot runs at robot.period from the config. autoBalance
+  //and the autos time everything with timestamps, so it can be lowered below the 20 ms default for
+  //tighter control without retuning them
+  public static final double kPeriod = TimedRobot.kDefaultPeriod;
+
+  //create our variables and options for auton, every routine is a command built at init
+  private AutoRegistry m_autos;
+  private Command m_autoCommand;
   private autoBalance mAutoBalance;
 
-  //create motors for drivetrain
-  private final Spark m_leftMotor = new Spark(0);
-  private final Spark m_rightMotor = new Spark(1);
-
-  //create our drive and speed options
-  private final DifferentialDrive m_robotDrive = new DifferentialDrive(m_leftMotor, m_rightMotor);
+  //create our drivetrain and speed options
+  private final Drivetrain m_drivetrain = new Drivetrain();
   private static final String kSlowSpeed = "Slow Speed";
   private static final String kFastSpeed = "Fast Speed";
   private static final double fastSpeed = 1.0;
   private static final double slowSpeed = 0.75;
+  static final String kSpeedChooserKey = "Speed:";
   private String m_speedSelected;
-  private SendableChooser<String> m_speedChooser;
+  private DashboardChooser<String> m_speedChooser;
   private double speedMultiplier = slowSpeed;
 
-  //shoulder
-  private CANSparkMax m_shoulder;
-  private RelativeEncoder m_encoder;
-  private final double kP = 0.016;
-  private final double kI = 0.002;
-  private final double kD = 0.0;
-  private final PIDController pid = new PIDController(kP, kI, kD);
+  //shoulder, controlled on its own 5 ms periodic. The setpoints come from the config
+  private ShoulderController m_shoulder;
   private double setpoint = 0;
-  private double start = -1;
-  private double floor = 10;
-  private double mid = 41;
-  private double high = 47;
-  private double player_station = 42;
-  private double feedForward = 0.01;
-  private double above_floor = 18;
 
-  //claw
-  private CANSparkMax m_claw;
-  private final double closeClawSpeed = -0.37;
-  private final double openClawSpeed = 0.25;
+  //arm setpoints, gains and auto thresholds, tunable from the dashboard. The snapshot is taken
+  //once per loop in loopFunc and everything in the loop uses that one
+  private ConfigManager m_configManager;
+  private RobotConfig m_config;
 
-  //CREATE CONTROLLER :)
-  private final XboxController m_driveController = new XboxController(0);
-  private final XboxController m_operatorController = new XboxController(1);
-
-  //Cameras
-  private UsbCamera camera1;
-  //private UsbCamera camera2;
+  //claw
+  private Claw m_claw;
+
+  //CAN ids and how often each Spark MAX sends its status frames, see CanTrafficProfile
+  private static final int kClawId = 4;
+  private static final int kShoulderId = 5;
+  private static final CanTrafficProfile kClawProfile = CanTrafficProfile.kCurrent;
+  private static final CanTrafficProfile kShoulderProfile = CanTrafficProfile.kPositionAndCurrent;
+  private CanMonitor m_canMonitor;
+  //how long every REVLib, CANLight and LED call takes and whether the devices answer
+  private DeviceMonitor m_devices;
+
+  //turns the drive, claw and shoulder down before the battery browns the rio out
+  private PowerManager m_power;
+  //the drive output asked for before throttling, the most either side gets (DifferentialDrive squares the sticks)
+  private double m_driveDemand;
+  private int m_brownoutCount;
+
+  //CREATE CONTROLLER :) each one is read once per loop into a snapshot, see ControllerInput.
+  //DifferentialDrive squares the drive sticks itself, so they only get a deadband here
+  private static final double kStickDeadband = 0.05;
+  private static final double kTriggerDeadband = 0.05;
+  private final ControllerInput m_driveInput = new ControllerInput(0)
+      .setShaping(ControllerInput.kLeftY, kStickDeadband, 1)
+      .setShaping(ControllerInput.kRightX, kStickDeadband, 1);
+  private final ControllerInput m_operatorInput = new ControllerInput(1)
+      .setShaping(ControllerInput.kLeftTrigger, kTriggerDeadband, 1)
+      .setShaping(ControllerInput.kRightTrigger, kTriggerDeadband, 1);
+
+  //Cameras, both go through one stream sized to the mode and the bandwidth budget
+  private CameraManager m_cameras;
+  private static final double kCameraBudgetMbps = 3.0;
 
   //Setup lights
-  CANLight lights;
+  private static final int kLightsId = 3;
+  CANLightPool m_lights;
   private static final String kRedTeam = "Red Alliance";
   private static final String kBlueTeam = "Blue Alliance";
   private String m_colorSelected;
-  private SendableChooser<String> m_colorChooser;
+  private DashboardChooser<String> m_colorChooser;
+  static final String kColorChooserKey = "Color:";
 
   //LEDS
-  private AddressableLED m_led;
-  private AddressableLEDBuffer m_ledBuffer;
+  private LedAnimator m_leds;
+  //the charge station tips at most this far each way, the tilt gauge is full there
+  private static final double kGaugeDegrees = 15;
+
+  //loop timing
+  private LoopTimer m_loopTimer;
+
+  //on-robot log, written to disk from a background thread
+  private RobotLogger m_logger;
+
+  //every input read each loop, for playing the match back with MatchReplay
+  private final boolean m_replaying;
+  private MatchRecorder m_recorder;
+
+  //dashboard values, only published when they change
+  private Telemetry m_telemetry;
+  private Telemetry.DoubleEntry m_tiltEntry;
+  private Telemetry.DoubleEntry m_autoSpeedEntry;
+  private Telemetry.DoubleEntry m_armPositionEntry;
+  private Telemetry.DoubleEntry m_pidEntry;
+  private Telemetry.DoubleEntry m_feedforwardEntry;
+  private Telemetry.DoubleEntry m_moveTimeEntry;
+  private Telemetry.DoubleEntry m_movePeakErrorEntry;
+  private Telemetry.DoubleEntry m_batteryEntry;
+  private Telemetry.DoubleEntry m_predictedVoltageEntry;
+  private Telemetry.DoubleEntry m_driveThrottleEntry;
+  private Telemetry.DoubleEntry m_clawThrottleEntry;
+  private Telemetry.DoubleEntry m_shoulderThrottleEntry;
+  private Telemetry.StringEntry m_throttleReasonEntry;
+
+  //how long startup takes, and the parts of it the robot can drive without
+  private final StartupTimer m_startup = new StartupTimer();
+  private BackgroundInit m_background;
+  //each part is used as soon as it is ready, a camera that fails does not take the dashboard with it
+  private int m_dashboardTask;
+  private int m_ledsTask;
+  private int m_camerasTask;
+  private boolean m_dashboardReady;
+  private boolean m_ledsReady;
+  private boolean m_camerasReady;
+  private boolean m_firstLoop = true;
+
+  //desktop simulation only, the charge station model feeds the simulated accelerometer
+  private ChargeStationSim m_chargeStationSim;
+  private BuiltInAccelerometerSim m_accelSim;
+
+  /** Runs at the period in the config saved in the deploy directory, see {@link RobotConfig#period}. */
+  public Robot() {
+    this(new ConfigManager());
+  }
+
+  private Robot(ConfigManager configManager) {
+    super(configManager.get().period);
+    m_replaying = false;
+    m_configManager = configManager;
+  }
+
+  /** @param period main loop period in seconds */
+  public Robot(double period) {
+    this(period, false);
+  }
+
+  /**
+   * @param period main loop period in seconds
+   * @param replaying true when {@link MatchReplay} feeds the inputs, nothing is recorded then
+   */
+  Robot(double period, boolean replaying) {
+    super(period);
+    m_replaying = replaying;
+  }
 
   /**
    * This function is run when the robot is first started up and should be used for any
@@ -110,86 +187,207 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void robotInit() {
+    m_startup.mark("robotInit start");
+
+    //time every phase of the loop and publish the histograms once a second
+    m_loopTimer = new LoopTimer(getPeriod(), 1.0);
+
+    //LiveWindow updates every motor and sensor for the dashboard each loop, and nothing here uses it
+    LiveWindow.disableAllTelemetry();
+    enableLiveWindowInTest(false);
+
+    //log to a wpilog file on the rio (or USB stick), with driver station and joystick data
+    DataLogManager.start();
+    DriverStation.startDataLog(DataLogManager.getLog());
+    m_logger = new RobotLogger(DataLogManager.getLog(), 1024);
+    if (!m_replaying) {
+      startRecording();
+    }
 
-    //Add autobalance options to dashboard
-    m_chooser = new SendableChooser<>();
-    m_chooser.setDefaultOption(kScoreAuto, kScoreAuto);
-    m_chooser.addOption(kScoreAndDriveAuto, kScoreAndDriveAuto);
-    m_chooser.addOption(kScoreAndBalanceAuto, kScoreAndBalanceAuto);
-    m_chooser.addOption(kBalanceAuto, kBalanceAuto);
-    SmartDashboard.putData("Auto mode:", m_chooser);
+    //load the config saved in the deploy directory, unless the constructor already did for the period
+    if (m_configManager == null) {
+      m_configManager = new ConfigManager();
+    }
+    m_config = m_configManager.get();
 
     //initialize autoBalance code
-    mAutoBalance = new autoBalance();
+    mAutoBalance = new autoBalance(m_config.autoBalance, new BuiltInAccelerometer(), getPeriod());
+
+    //build every auto once and add the options to dashboard
+    m_autos = new AutoRegistry(mAutoBalance, m_drivetrain);
 
     //Add speed options to dashboard
-    m_speedChooser = new SendableChooser<>();
+    m_speedChooser = new DashboardChooser<>();
     m_speedChooser.setDefaultOption("Slow", kSlowSpeed);
     m_speedChooser.addOption("Fast", kFastSpeed);
-    SmartDashboard.putData("Speed:", m_speedChooser);
+    m_speedChooser.publish(kSpeedChooserKey);
 
-    //Setup lights and color options
-    // lights = new CANLight(3);
-    // //red
-    // lights.writeRegister(0, 30, 255, 0, 0);
-    // //blue
-    // lights.writeRegister(1, 30, 0, 0, 255);
+    m_devices = new DeviceMonitor(getPeriod(), 1.0);
+    m_claw = new Claw(kClawId, kClawProfile, m_devices);
 
-    m_colorChooser = new SendableChooser<>();
+    //initialize arm spark max so the encoder value gets reset, then run the arm faster than the main loop
+    m_shoulder = new ShoulderController(kShoulderId, kShoulderProfile, m_devices);
+    m_shoulder.setGains(m_config.shoulderGains);
+    addPeriodic(m_shoulder::controlPeriodic, ShoulderController.kPeriod);
+
+    m_power = new PowerManager();
+
+    //the robot can drive without the rest, so it is set up on another thread while the loop runs
+    m_background = new BackgroundInit("RobotInit", () -> m_startup.mark("background ready"));
+    m_dashboardTask = m_background.add("dashboard", this::initDashboard);
+    m_ledsTask = m_background.add("LEDs", this::initLeds);
+    m_camerasTask = m_background.add("cameras", this::initCameras);
+    m_background.start();
+    m_startup.mark("robotInit done");
+  }
+
+  //runs on the background thread, see BackgroundInit
+  private void initDashboard() {
+    //register dashboard values with their deadband and fastest publish rate
+    m_telemetry = new Telemetry();
+    m_tiltEntry = m_telemetry.addNumber("Tilt: ", 0.1, 0.1);
+    m_autoSpeedEntry = m_telemetry.addNumber("Auto speed: ", 0.01, 0.05);
+    m_armPositionEntry = m_telemetry.addNumber("Arm Position: ", 0.1, 0.1);
+    m_pidEntry = m_telemetry.addNumber("PID", 0.001, 0.1);
+    m_feedforwardEntry = m_telemetry.addNumber("Arm FF", 0.001, 0.1);
+    // time for the last arm move to get within tolerance, and its largest error from the profile
+    m_moveTimeEntry = m_telemetry.addNumber("Arm move time", 0.01, 0.1);
+    m_movePeakErrorEntry = m_telemetry.addNumber("Arm move peak error", 0.01, 0.1);
+
+    //publish the config to the dashboard and take changes from it, not while replaying a match
+    if (!m_replaying) {
+      m_configManager.startLiveTuning();
+    }
+    //how much the power manager turned each consumer down, in percent, and why
+    m_batteryEntry = m_telemetry.addNumber("Battery V", 0.05, 0.1);
+    m_predictedVoltageEntry = m_telemetry.addNumber("Battery predicted V", 0.05, 0.1);
+    m_driveThrottleEntry = m_telemetry.addNumber("Drive throttle %", 1, 0.1);
+    m_clawThrottleEntry = m_telemetry.addNumber("Claw throttle %", 1, 0.1);
+    m_shoulderThrottleEntry = m_telemetry.addNumber("Shoulder throttle %", 1, 0.1);
+    m_throttleReasonEntry = m_telemetry.addString("Throttle reason", 0.1);
+
+    //CAN bus load, to check before adding devices
+    m_canMonitor = new CanMonitor(1.0);
+    m_canMonitor.addDevice("Claw", kClawId, kClawProfile);
+    m_canMonitor.addDevice("Shoulder", kShoulderId, kShoulderProfile);
+
+    //Setup lights and color options
+    //queue depth 8 sends commands from a background thread so showRegister never blocks the loop
+    //the pool skips commands that would not change the strip, so showRegister can run every loop
+    // m_lights = new CANLightPool(8, m_devices);
+    // m_lights.program(new CANLightPool.RegisterSet()
+    //     //red
+    //     .set(0, 30, 255, 0, 0)
+    //     //blue
+    //     .set(1, 30, 0, 0, 255), kLightsId);
+    // //the strip reads the battery at the far end of the wiring, the power manager uses the lower reading
+    // m_power.setAuxVoltageSource(() -> m_lights.get(kLightsId).getBatteryVoltage());
+
+    m_colorChooser = new DashboardChooser<>();
     m_colorChooser.setDefaultOption(kBlueTeam, kBlueTeam);
     m_colorChooser.addOption(kRedTeam, kRedTeam);
-    SmartDashboard.putData("Color:", m_colorChooser);
-
-    //setup our front camera
-    camera1 = CameraServer.startAutomaticCapture("Front Camera", 0);
-    camera1.setResolution(320, 240);
-    camera1.setFPS(15);
-
-    //setup our second camera
-    // camera2 = CameraServer.startAutomaticCapture("Back camera", 1);
-    // camera2.setResolution(240, 180);
-    // camera2.setPixelFormat(PixelFormat.kMJPEG);
-    // camera2.setFPS(15);
-    // camera2.setConnectionStrategy(VideoSource.ConnectionStrategy.kKeepOpen);
-
-    //invert voltages of one of our motors
-    m_rightMotor.setInverted(true);
-
-    //set a current limit for the claw
-    m_claw = new CANSparkMax(4, MotorType.kBrushed);
-    // m_claw.setSmartCurrentLimit(20);
-
-    //initialize arm spark max so the encoder value gets reset
-    m_shoulder = new CANSparkMax(5, MotorType.kBrushless);
-    m_shoulder.restoreFactoryDefaults();
-    m_encoder = m_shoulder.getEncoder();
-    m_encoder.setPosition(0);
-
-    // PWM port 9
+    m_colorChooser.publish(kColorChooserKey);
+  }
+
+  //runs on the background thread, see BackgroundInit
+  private void initCameras() {
+    //setup our cameras, the front camera is streamed first, start on the drive controller switches
+    m_cameras = new CameraManager("Driver Camera", kCameraBudgetMbps);
+    if (isSimulation()) {
+      m_cameras.addSyntheticCamera("Front Camera");
+      m_cameras.addSyntheticCamera("Back Camera");
+    } else {
+      m_cameras.addUsbCamera("Front Camera", 0);
+      m_cameras.addUsbCamera("Back Camera", 1);
+    }
+  }
+
+  //runs on the background thread, see BackgroundInit
+  private void initLeds() {
+    // PWM port 9, 120 LEDs checked for changes in segments of 15
     // Must be a PWM header, not MXP or DIO
-    m_led = new AddressableLED(9);
+    m_leds = new LedAnimator(9, 120, 15, m_devices.addDevice("LEDs (PWM 9)"));
+    m_leds.solid(LedAnimator.kBlue);
+    m_leds.update();
+  }
 
-    // Reuse buffer
-    // Default to a length of 60, start empty output
-    // Length is expensive to set, so only set it once, then just update data
-    m_ledBuffer = new AddressableLEDBuffer(120);
-    m_led.setLength(m_ledBuffer.getLength());
+  /** Record the inputs of every loop next to the wpilog files, a new file every time the code starts. */
+  private void startRecording() {
+    try {
+      Path file = Paths.get(DataLogManager.getLogDir(), "match_" + System.currentTimeMillis() + ".rec");
+      for (int i = 1; Files.exists(file); i++) {
+        file = Paths.get(DataLogManager.getLogDir(), "match_" + System.currentTimeMillis() + "_" + i + ".rec");
+      }
+      m_recorder = new MatchRecorder(file, getPeriod(), 512,
+          AutoRegistry.kChooserKey, kSpeedChooserKey, kColorChooserKey);
+    } catch (IOException ex) {
+      DriverStation.reportWarning("Match recording disabled: " + ex.getMessage(), false);
+    }
+  }
 
-    for (var i = 0; i < m_ledBuffer.getLength(); i++) {
-        // Sets the specified LED to the RGB values for red
-        m_ledBuffer.setRGB(i, 0, 0, 255);
+  /**
+   * Wait for the background part of robotInit, for tools that need the whole robot from the first
+   * loop so their runs are repeatable.
+   *
+   * @return whether it finished without errors
+   */
+  boolean awaitBackgroundInit(double timeoutSeconds) {
+    return m_background.await(timeoutSeconds);
+  }
+
+  /** The shoulder, for {@link MatchReplay} to feed the recorded encoder position and step it. */
+  ShoulderController getShoulder() {
+    return m_shoulder;
+  }
+
+  /**
+   * Runs once per loop before any of the periodic functions. Sensors that are shared between the
+   * mode and robot periodic functions are sampled here so they are read once per tick.
+   */
+  @Override
+  public void loopFunc() {
+    if (m_firstLoop) {
+      m_firstLoop = false;
+      m_startup.mark("first loop");
+    }
+    //the barriers, once one is true everything that part of the background init set up can be used
+    if (!m_dashboardReady) {
+      m_dashboardReady = m_background.isReady(m_dashboardTask);
+    }
+    if (!m_ledsReady) {
+      m_ledsReady = m_background.isReady(m_ledsTask);
+    }
+    if (!m_camerasReady) {
+      m_camerasReady = m_background.isReady(m_camerasTask);
     }
-    
-    m_led.setData(m_ledBuffer);
+    m_loopTimer.startLoop();
+    //a new snapshot from the dashboard takes effect here, the shoulder gains at once
+    m_config = m_configManager.get();
+    m_shoulder.setGains(m_config.shoulderGains);
+    mAutoBalance.update();
+    updatePower();
+    super.loopFunc();
+    m_loopTimer.endLoop();
+  }
 
-    // Set the data
-    m_led.setData(m_ledBuffer);
-    m_led.start();
-    
+  //sample the battery and currents before any motor is set this loop
+  private void updatePower() {
+    m_power.update(Timer.getFPGATimestamp(), m_driveDemand, m_claw.getCurrent(), m_shoulder.getCurrent());
+
+    //a brownout may have reset the Spark MAXes and the lights, so send their settings again
+    int brownouts = m_power.getBrownoutCount();
+    if (brownouts != m_brownoutCount) {
+      m_brownoutCount = brownouts;
+      m_claw.reconfigure();
+      m_shoulder.reconfigure();
+      if (m_dashboardReady && m_lights != null) {
+        m_lights.invalidateAll();
+      }
+    }
   }
 
   /**
-   * This function is called every 20 ms, no matter the mode. Use this for items like diagnostics
+   * This function is called every loop ({@link #kPeriod}), no matter the mode. Use this for items like diagnostics
    * that you want ran during disabled, autonomous, teleoperated and test.
    *
    * <p>This runs after the mode specific periodic functions, but before LiveWindow and
@@ -197,147 +395,246 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void robotPeriodic() {
-    SmartDashboard.putNumber("Tilt: ", mAutoBalance.getTilt());
+    //runs the scheduled auto, if any
+    m_loopTimer.start(LoopTimer.kScheduler);
+    CommandScheduler.getInstance().run();
+    m_loopTimer.stop();
+
+    m_loopTimer.start(LoopTimer.kRobotPeriodic);
+    if (m_dashboardReady) {
+      m_tiltEntry.set(mAutoBalance.getTilt());
+      m_batteryEntry.set(m_power.getVoltage());
+      m_predictedVoltageEntry.set(m_power.getPredictedVoltage());
+      m_driveThrottleEntry.set(m_power.getThrottlePercent(PowerManager.kDrive));
+      m_clawThrottleEntry.set(m_power.getThrottlePercent(PowerManager.kClaw));
+      m_shoulderThrottleEntry.set(m_power.getThrottlePercent(PowerManager.kShoulder));
+      m_throttleReasonEntry.set(m_power.getReason());
+    }
+
+    if (m_ledsReady) {
+      //pick what the LEDs show for this mode, update() only writes the strip if the frame changed
+      if (isDisabled()) {
+        m_leds.chase(DriverStation.getAlliance(), Timer.getFPGATimestamp());
+      } else if (isAutonomous()) {
+        m_leds.gauge((mAutoBalance.getTilt() - m_config.balanceGains.levelTilt) / kGaugeDegrees);
+      } else if (isTeleop()) {
+        m_leds.bar(m_shoulder.getPosition(), m_config.start, m_config.high);
+      } else {
+        m_leds.alliance(DriverStation.getAlliance());
+      }
+      m_loopTimer.start(LoopTimer.kLeds);
+      m_leds.update();
+      m_loopTimer.stop();
+    }
+
+    if (m_camerasReady) {
+      //only reconfigures the stream when the mode changes
+      if (isDisabled()) {
+        m_cameras.periodic(CameraManager.kDisabled);
+      } else if (isAutonomous()) {
+        m_cameras.periodic(CameraManager.kAutonomous);
+      } else {
+        m_cameras.periodic(CameraManager.kTeleop);
+      }
+    }
+
+    //queue this loop's values for the log, the file is written from another thread
+    AttitudeEstimator attitude = mAutoBalance.getAttitude();
+    m_logger.set(RobotLogger.kAccelX, attitude.getRawX());
+    m_logger.set(RobotLogger.kAccelY, attitude.getRawY());
+    m_logger.set(RobotLogger.kAccelZ, attitude.getRawZ());
+    m_logger.set(RobotLogger.kTilt, attitude.getTilt());
+    m_logger.set(RobotLogger.kAutoState, mAutoBalance.getState());
+    m_logger.set(RobotLogger.kDriveForward, m_drivetrain.getForward());
+    m_logger.set(RobotLogger.kDriveRotation, m_drivetrain.getRotation());
+    m_logger.set(RobotLogger.kShoulderPosition, m_shoulder.getPosition());
+    m_logger.set(RobotLogger.kShoulderPid, m_shoulder.getPidValue());
+    m_logger.set(RobotLogger.kShoulderOutput, m_shoulder.getOutput());
+    m_logger.set(RobotLogger.kClaw, m_claw.getSpeed());
+    m_logger.set(RobotLogger.kBatteryVoltage, m_power.getVoltage());
+    m_logger.set(RobotLogger.kPredictedVoltage, m_power.getPredictedVoltage());
+    m_logger.set(RobotLogger.kDriveScale, m_power.getScale(PowerManager.kDrive));
+    m_logger.commit(RobotController.getFPGATime());
+
+    //only while a driver station is connected, so a robot left on in the pits does not fill the disk
+    if (m_recorder != null && DriverStation.isDSAttached()) {
+      m_recorder.record(attitude.getRawX(), attitude.getRawY(), attitude.getRawZ(),
+          m_shoulder.getSamples(), m_shoulder.getSampleCount());
+    }
+    m_shoulder.clearSamples();
+
+    //robotPeriodic runs after the mode periodic, so everything set this loop goes out in one batch
+    m_loopTimer.start(LoopTimer.kDashboard);
+    if (m_dashboardReady) {
+      m_telemetry.flush(Timer.getFPGATimestamp());
+    }
+    //device call times and health, published about once a second
+    m_devices.periodic();
+    m_loopTimer.stop();
 
     // m_colorSelected = m_colorChooser.getSelected();
     // switch(m_colorSelected){
     //   case kRedTeam:
-    //     lights.showRegister(0);
+    //     m_lights.showRegister(kLightsId, 0);
     //     break;
     //   case kBlueTeam:
     //   default:
-    //     lights.showRegister(1);
+    //     m_lights.showRegister(kLightsId, 1);
     //     break;
     // }
+    m_loopTimer.stop();
   }
 
   /**
    * This autonomous (along with the chooser code above) shows how to select between different
-   * autonomous modes using the dashboard. The sendable chooser code works with the Java
-   * SmartDashboard. If you prefer the LabVIEW Dashboard, remove all of the chooser code and
-   * uncomment the getString line to get the auto name from the text box below the Gyro
+   * autonomous modes using the dashboard. The selected command is read once here and scheduled,
+   * the command scheduler in robotPeriodic runs it from then on.
    *
-   * <p>You can add additional auto modes by adding additional comparisons to the switch structure
-   * below with additional strings. If using the SendableChooser make sure to add them to the
-   * chooser code above as well.
+   * <p>You can add additional auto modes by adding them to {@link AutoRegistry}.
    */
   @Override
   public void autonomousInit() {
-    m_autoSelected = m_chooser.getSelected();
+    m_shoulder.disable();
+    if (m_chargeStationSim != null) {
+      m_chargeStationSim.reset();
+    }
+    //the autos are rebuilt only between runs, a config changed mid auto waits for the next one
+    mAutoBalance.setConfig(m_config.autoBalance);
+    m_autoCommand = m_autos.getSelected();
+    if (m_autoCommand != null) {
+      m_autoCommand.schedule();
+    }
   }
 
   /** This function is called periodically during autonomous. */
   @Override
   public void autonomousPeriodic() {
-    m_autoSelected = m_chooser.getSelected();
-    double speed;
-
-    switch (m_autoSelected) {
-      case kScoreAndBalanceAuto:
-        speed = mAutoBalance.scoreAndBalance();
-        SmartDashboard.putNumber("Auto speed: ", speed);
-        m_robotDrive.arcadeDrive(speed, 0);
-        break;
-      case kBalanceAuto:
-        speed = mAutoBalance.autoBalanceRoutine();
-        SmartDashboard.putNumber("Auto speed: ", speed);
-        m_robotDrive.arcadeDrive(speed, 0);
-        break;
-      case kScoreAndDriveAuto:
-        speed = mAutoBalance.scoreAndDrive();
-        SmartDashboard.putNumber("Auto speed: ", speed);
-        m_robotDrive.arcadeDrive(speed, 0);
-        break;
-      case kScoreAuto:
-      default:
-        speed = mAutoBalance.score();
-        SmartDashboard.putNumber("Auto speed: ", speed);
-        m_robotDrive.arcadeDrive(speed, 0);
-        break;
+    m_loopTimer.start(LoopTimer.kModePeriodic);
+    //autos are not throttled, their speeds are tuned, but what they draw still counts
+    m_driveDemand = driveOutput(m_drivetrain.getForward(), m_drivetrain.getRotation());
+    if (m_dashboardReady) {
+      m_autoSpeedEntry.set(m_drivetrain.getForward());
     }
+    m_loopTimer.stop();
   }
 
   /** This function is called once when teleop is enabled. */
   @Override
   public void teleopInit() {
+    if (m_autoCommand != null) {
+      m_autoCommand.cancel();
+    }
+
+    //set drive speed once for the whole match
     m_speedSelected = m_speedChooser.getSelected();
+    if (kFastSpeed.equals(m_speedSelected)) {
+      speedMultiplier = fastSpeed;
+    } else {
+      speedMultiplier = slowSpeed;
+    }
+    m_shoulder.setGoal(setpoint);
+    m_shoulder.enable();
+
+    //take the button state now, so buttons held while disabled do not count as presses
+    m_driveInput.update();
+    m_operatorInput.update();
   }
 
   /** This function is called periodically during operator control. */
   @Override
   public void teleopPeriodic() {
-    //set drive speed
-    m_speedSelected = m_speedChooser.getSelected();
-    switch (m_speedSelected) {
-      case kFastSpeed:
-        speedMultiplier = fastSpeed;
-        break;
-      case kSlowSpeed:
-      default:
-        // Put default auto code here
-        speedMultiplier = slowSpeed;
-        break;
+    m_loopTimer.start(LoopTimer.kModePeriodic);
+    //read both controllers once, everything below uses the snapshots
+    m_driveInput.update();
+    m_operatorInput.update();
+
+    //Drive with split arcade drive, turned down by the power manager. DifferentialDrive squares
+    //the sticks, so the square root of the drive scale goes on the multiplier
+    double leftStick = -m_driveInput.getAxis(ControllerInput.kLeftY) * speedMultiplier;
+    double rightStick = -m_driveInput.getAxis(ControllerInput.kRightX) * speedMultiplier;
+    m_driveDemand = driveOutput(leftStick, rightStick);
+    double driveScale = Math.sqrt(m_power.getScale(PowerManager.kDrive));
+    m_claw.setScale(m_power.getScale(PowerManager.kClaw));
+    m_shoulder.setScale(m_power.getScale(PowerManager.kShoulder));
+    m_loopTimer.start(LoopTimer.kMotors);
+    m_drivetrain.arcadeDrive(leftStick * driveScale, rightStick * driveScale);
+    m_loopTimer.stop();
+
+    //start button switches between the front and back camera
+    if (m_camerasReady && m_driveInput.wasPressed(ControllerInput.kStart)) {
+      m_cameras.next();
     }
 
-    //Drive with split arcade drive
-    double leftStick = -m_driveController.getLeftY() * speedMultiplier;
-    double rightStick = -m_driveController.getRightX() * speedMultiplier;
-    m_robotDrive.arcadeDrive(leftStick, rightStick);
-
-    double leftTrigger = m_operatorController.getLeftTriggerAxis();
-    double rightTrigger = m_operatorController.getRightTriggerAxis();
-    boolean rightBumperPressed = m_operatorController.getRightBumperPressed();
-    boolean leftBumperPressed = m_operatorController.getLeftBumperPressed();
-    boolean aButtonPressed = m_operatorController.getAButtonPressed();
-    boolean bButtonPressed = m_operatorController.getBButtonPressed();
-    boolean yButtonPressed = m_operatorController.getYButtonPressed();
-    boolean xButtonPressed = m_operatorController.getXButtonPressed();
-    boolean backButtonPressed = m_operatorController.getBackButtonPressed();
+    double leftTrigger = m_operatorInput.getAxis(ControllerInput.kLeftTrigger);
+    double rightTrigger = m_operatorInput.getAxis(ControllerInput.kRightTrigger);
+    boolean leftBumperPressed = m_operatorInput.wasPressed(ControllerInput.kLeftBumper);
+    boolean aButtonPressed = m_operatorInput.wasPressed(ControllerInput.kA);
+    boolean bButtonPressed = m_operatorInput.wasPressed(ControllerInput.kB);
+    boolean yButtonPressed = m_operatorInput.wasPressed(ControllerInput.kY);
+    boolean xButtonPressed = m_operatorInput.wasPressed(ControllerInput.kX);
+    boolean backButtonPressed = m_operatorInput.wasPressed(ControllerInput.kBack);
   
     // intentionally putting this in separate if/else to ensure accidental back button presses are overridden
 
     if(backButtonPressed){
-      setpoint = start;
+      setpoint = m_config.start;
     }
 
     if(aButtonPressed){
       //a button set the arm to floor
-      setpoint = floor;
+      setpoint = m_config.floor;
     } else if(bButtonPressed) {
       //b button set the arm to mid
-      setpoint = mid;
+      setpoint = m_config.mid;
     } else if(yButtonPressed) {
       //y button set the arm to high
-      setpoint = high;
+      setpoint = m_config.high;
     } else if(xButtonPressed) {
       //x button set the arm to retract
-      setpoint = player_station;
+      setpoint = m_config.playerStation;
     } else if(leftBumperPressed) {
       // left bumper button set the arm to above floor
-      setpoint = above_floor;
+      setpoint = m_config.aboveFloor;
     }
 
-    double pidValue = pid.calculate(m_encoder.getPosition(), setpoint);
-    m_shoulder.set(feedForward + pidValue);
-
+    //the shoulder controller profiles its way to the new setpoint on its own periodic
+    m_shoulder.setGoal(setpoint);
 
+    m_loopTimer.start(LoopTimer.kMotors);
     if(rightTrigger > 0){
       //right trigger closes the claw
-      m_claw.set(closeClawSpeed);
+      m_claw.close();
     } else if(leftTrigger > 0) {
       //left trigger opens the claw
-      m_claw.set(openClawSpeed);
+      m_claw.open();
     } else {
-      m_claw.set(0.00);
+      m_claw.stop();
     }
-
-    SmartDashboard.putNumber("Arm Position: ", m_encoder.getPosition());
-    SmartDashboard.putNumber("PID", pidValue);
+    m_loopTimer.stop();
+
+    if (m_dashboardReady) {
+      m_armPositionEntry.set(m_shoulder.getPosition());
+      m_pidEntry.set(m_shoulder.getPidValue());
+      m_feedforwardEntry.set(m_shoulder.getFeedforwardValue());
+      if (m_shoulder.getMoveCount() > 0) {
+        m_moveTimeEntry.set(m_shoulder.getLastMoveTime());
+        m_movePeakErrorEntry.set(m_shoulder.getLastMovePeakError());
+      }
+    }
+    m_loopTimer.stop();
   }
 
   /** This function is called once when the robot is disabled. */
   @Override
-  public void disabledInit() {}
+  public void disabledInit() {
+    m_shoulder.disable();
+    m_driveDemand = 0;
+  }
+
+  //the most either drive side gets from arcadeDrive, which squares both inputs
+  private static double driveOutput(double forward, double rotation) {
+    return Math.min(1, forward * forward + rotation * rotation);
+  }
 
   /** This function is called periodically when disabled. */
   @Override
@@ -345,17 +642,34 @@ public class Robot extends TimedRobot {
 
   /** This function is called once when test mode is enabled. */
   @Override
-  public void testInit() {mAutoBalance = new autoBalance();}
+  public void testInit() {
+    m_shoulder.disable();
+    mAutoBalance.reset();
+  }
 
   /** This function is called periodically during test mode. */
   @Override
-  public void testPeriodic() {System.out.println("Tilt: "+ mAutoBalance.getTilt());}
+  public void testPeriodic() {}
 
   /** This function is called once when the robot is first started up. */
   @Override
-  public void simulationInit() {}
+  public void simulationInit() {
+    //the robot starts against the grid every time auto is enabled, see ChargeStationSim
+    m_chargeStationSim = new ChargeStationSim(System.nanoTime(), 0.02);
+    m_accelSim = new BuiltInAccelerometerSim();
+    m_accelSim.setActive(true);
+  }
 
-  /** This function is called periodically whilst in simulation. */
+  /**
+   * This function is called periodically whilst in simulation. Steps the charge station model with
+   * what the drivetrain was told to do this loop, autoBalance reads the result at the start of the
+   * next loop.
+   */
   @Override
-  public void simulationPeriodic() {}
+  public void simulationPeriodic() {
+    m_chargeStationSim.step(m_drivetrain.getForward(), getPeriod());
+    m_accelSim.setX(m_chargeStationSim.getAccelX());
+    m_accelSim.setY(m_chargeStationSim.getAccelY());
+    m_accelSim.setZ(m_chargeStationSim.getAccelZ());
+  }
 }
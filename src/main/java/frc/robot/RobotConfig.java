@@ -0,0 +1,219 @@
+package frc.robot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Everything that can be tuned without a redeploy: the loop period, the arm setpoints, the shoulder
+ * gains and the {@link AutoBalanceConfig}. Immutable, {@link ConfigManager} swaps in a whole new snapshot at
+ * once, so code that reads the snapshot once per loop always sees one consistent set of values.
+ *
+ * <p>A snapshot is stored as "key=value" pairs (see {@link #toMap()} for the keys), numbers in
+ * Java's double syntax and switches as true or false. {@link #fromMap} only builds a snapshot from
+ * values that make sense, so a typo on the dashboard cannot reach the robot.
+ */
+public final class RobotConfig {
+  // how far the arm can go past the start and high setpoints, see ShoulderTuner
+  private static final double kMinSetpoint = ShoulderController.kStart - 2;
+  private static final double kMaxSetpoint = ShoulderController.kHigh + 5;
+  // the loop can not be faster than the shoulder's periodic, and MatchRecorder keeps
+  // ShoulderController.kMaxSamples shoulder steps per loop
+  private static final double kMinPeriod = ShoulderController.kPeriod;
+  private static final double kMaxPeriod = ShoulderController.kPeriod * ShoulderController.kMaxSamples;
+
+  public static final RobotConfig kDefault = new RobotConfig(Robot.kPeriod,
+      ShoulderController.kStart, ShoulderController.kFloor, ShoulderController.kAboveFloor,
+      ShoulderController.kMid, ShoulderController.kPlayerStation, ShoulderController.kHigh,
+      ShoulderGains.kDefault, AutoBalanceConfig.kDefault, BalanceGains.kDefault);
+
+  /**
+   * Main loop period in seconds. TimedRobot takes it when the robot is constructed, so a new value
+   * only takes effect the next time the robot code starts.
+   */
+  public final double period;
+
+  /** Arm setpoints, in encoder rotations. */
+  public final double start;
+  public final double floor;
+  public final double aboveFloor;
+  public final double mid;
+  public final double playerStation;
+  public final double high;
+
+  public final ShoulderGains shoulderGains;
+
+  /** What autoBalance runs. Its balance gains are null when the bang-bang stage is picked. */
+  public final AutoBalanceConfig autoBalance;
+
+  /** The PD balance gains, kept while the bang-bang stage is picked so they are not lost. */
+  public final BalanceGains balanceGains;
+
+  public RobotConfig(double period, double start, double floor, double aboveFloor, double mid, double playerStation,
+      double high, ShoulderGains shoulderGains, AutoBalanceConfig autoBalance, BalanceGains balanceGains) {
+    this.period = period;
+    this.start = start;
+    this.floor = floor;
+    this.aboveFloor = aboveFloor;
+    this.mid = mid;
+    this.playerStation = playerStation;
+    this.high = high;
+    this.shoulderGains = shoulderGains;
+    this.autoBalance = autoBalance;
+    this.balanceGains = balanceGains;
+  }
+
+  /** @return every value by key, in the order they are written to the file */
+  public Map<String, String> toMap() {
+    Map<String, String> map = new LinkedHashMap<>();
+    map.put("robot.period", Double.toString(period));
+
+    map.put("arm.start", Double.toString(start));
+    map.put("arm.floor", Double.toString(floor));
+    map.put("arm.aboveFloor", Double.toString(aboveFloor));
+    map.put("arm.mid", Double.toString(mid));
+    map.put("arm.playerStation", Double.toString(playerStation));
+    map.put("arm.high", Double.toString(high));
+
+    map.put("shoulder.kP", Double.toString(shoulderGains.kP));
+    map.put("shoulder.kI", Double.toString(shoulderGains.kI));
+    map.put("shoulder.kD", Double.toString(shoulderGains.kD));
+    map.put("shoulder.kS", Double.toString(shoulderGains.kS));
+    map.put("shoulder.kG", Double.toString(shoulderGains.kG));
+    map.put("shoulder.kV", Double.toString(shoulderGains.kV));
+    map.put("shoulder.kA", Double.toString(shoulderGains.kA));
+
+    map.put("auto.robotSpeedFast", Double.toString(autoBalance.robotSpeedFast));
+    map.put("auto.robotSpeedSlow", Double.toString(autoBalance.robotSpeedSlow));
+    map.put("auto.onChargeStationDegree", Double.toString(autoBalance.onChargeStationDegree));
+    map.put("auto.levelDegree", Double.toString(autoBalance.levelDegree));
+    map.put("auto.debounceTime", Double.toString(autoBalance.debounceTime));
+    map.put("auto.tiltFilterTime", Double.toString(autoBalance.tiltFilterTime));
+    map.put("auto.singleTapTime", Double.toString(autoBalance.singleTapTime));
+    map.put("auto.scoringBackUpTime", Double.toString(autoBalance.scoringBackUpTime));
+    map.put("auto.doubleTapTime", Double.toString(autoBalance.doubleTapTime));
+    map.put("auto.escapeTime", Double.toString(autoBalance.escapeTime));
+
+    map.put("balance.pd", Boolean.toString(autoBalance.balanceGains != null));
+    map.put("balance.levelTilt", Double.toString(balanceGains.levelTilt));
+    map.put("balance.kP", Double.toString(balanceGains.kP));
+    map.put("balance.kD", Double.toString(balanceGains.kD));
+    map.put("balance.maxOutput", Double.toString(balanceGains.maxOutput));
+    map.put("balance.nearLevelDegrees", Double.toString(balanceGains.nearLevelDegrees));
+    map.put("balance.nearLevelOutput", Double.toString(balanceGains.nearLevelOutput));
+    map.put("balance.maxOutputRate", Double.toString(balanceGains.maxOutputRate));
+    map.put("balance.holdDegrees", Double.toString(balanceGains.holdDegrees));
+    map.put("balance.releaseTime", Double.toString(balanceGains.releaseTime));
+    map.put("balance.driveMaxSpeed", Double.toString(balanceGains.driveMaxSpeed));
+    map.put("balance.driveTimeConstant", Double.toString(balanceGains.driveTimeConstant));
+    return map;
+  }
+
+  /**
+   * Build a snapshot from values by key. Keys that are missing keep their value from base, keys
+   * that are not known are ignored.
+   *
+   * @throws IllegalArgumentException naming the first value that is not a number, is out of range
+   *     or is not true or false
+   */
+  public static RobotConfig fromMap(Map<String, String> map, RobotConfig base) {
+    double period = number(map, "robot.period", base.period);
+    if (period < kMinPeriod || period > kMaxPeriod)
+      throw new IllegalArgumentException("robot.period must be between " + kMinPeriod + " and "
+          + kMaxPeriod + " s: " + period);
+
+    double start = setpoint(map, "arm.start", base.start);
+    double floor = setpoint(map, "arm.floor", base.floor);
+    double aboveFloor = setpoint(map, "arm.aboveFloor", base.aboveFloor);
+    double mid = setpoint(map, "arm.mid", base.mid);
+    double playerStation = setpoint(map, "arm.playerStation", base.playerStation);
+    double high = setpoint(map, "arm.high", base.high);
+
+    ShoulderGains shoulder = base.shoulderGains;
+    ShoulderGains shoulderGains = new ShoulderGains(
+        positive(map, "shoulder.kP", shoulder.kP),
+        positive(map, "shoulder.kI", shoulder.kI),
+        positive(map, "shoulder.kD", shoulder.kD),
+        positive(map, "shoulder.kS", shoulder.kS),
+        positive(map, "shoulder.kG", shoulder.kG),
+        positive(map, "shoulder.kV", shoulder.kV),
+        positive(map, "shoulder.kA", shoulder.kA));
+
+    BalanceGains balance = base.balanceGains;
+    BalanceGains balanceGains = new BalanceGains(
+        number(map, "balance.levelTilt", balance.levelTilt),
+        number(map, "balance.kP", balance.kP),
+        number(map, "balance.kD", balance.kD),
+        output(map, "balance.maxOutput", balance.maxOutput),
+        positive(map, "balance.nearLevelDegrees", balance.nearLevelDegrees),
+        output(map, "balance.nearLevelOutput", balance.nearLevelOutput),
+        positive(map, "balance.maxOutputRate", balance.maxOutputRate),
+        positive(map, "balance.holdDegrees", balance.holdDegrees),
+        positive(map, "balance.releaseTime", balance.releaseTime),
+        positive(map, "balance.driveMaxSpeed", balance.driveMaxSpeed),
+        positive(map, "balance.driveTimeConstant", balance.driveTimeConstant));
+    boolean pd = bool(map, "balance.pd", base.autoBalance.balanceGains != null);
+
+    AutoBalanceConfig auto = base.autoBalance;
+    AutoBalanceConfig autoBalance = new AutoBalanceConfig(
+        output(map, "auto.robotSpeedFast", auto.robotSpeedFast),
+        output(map, "auto.robotSpeedSlow", auto.robotSpeedSlow),
+        number(map, "auto.onChargeStationDegree", auto.onChargeStationDegree),
+        number(map, "auto.levelDegree", auto.levelDegree),
+        positive(map, "auto.debounceTime", auto.debounceTime),
+        positive(map, "auto.tiltFilterTime", auto.tiltFilterTime),
+        positive(map, "auto.singleTapTime", auto.singleTapTime),
+        positive(map, "auto.scoringBackUpTime", auto.scoringBackUpTime),
+        positive(map, "auto.doubleTapTime", auto.doubleTapTime),
+        positive(map, "auto.escapeTime", auto.escapeTime),
+        pd ? balanceGains : null);
+
+    return new RobotConfig(period, start, floor, aboveFloor, mid, playerStation, high, shoulderGains,
+        autoBalance, balanceGains);
+  }
+
+  private static double number(Map<String, String> map, String key, double fallback) {
+    String value = map.get(key);
+    if (value == null) return fallback;
+    double number;
+    try {
+      number = Double.parseDouble(value.trim());
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException(key + " is not a number: " + value);
+    }
+    if (!Double.isFinite(number))
+      throw new IllegalArgumentException(key + " is not a number: " + value);
+    return number;
+  }
+
+  private static double positive(Map<String, String> map, String key, double fallback) {
+    double number = number(map, key, fallback);
+    if (number < 0)
+      throw new IllegalArgumentException(key + " must not be negative: " + number);
+    return number;
+  }
+
+  // a motor output
+  private static double output(Map<String, String> map, String key, double fallback) {
+    double number = positive(map, key, fallback);
+    if (number > 1)
+      throw new IllegalArgumentException(key + " must be between 0 and 1: " + number);
+    return number;
+  }
+
+  private static double setpoint(Map<String, String> map, String key, double fallback) {
+    double number = number(map, key, fallback);
+    if (number < kMinSetpoint || number > kMaxSetpoint)
+      throw new IllegalArgumentException(key + " must be between " + kMinSetpoint + " and "
+          + kMaxSetpoint + " rotations: " + number);
+    return number;
+  }
+
+  private static boolean bool(Map<String, String> map, String key, boolean fallback) {
+    String value = map.get(key);
+    if (value == null) return fallback;
+    value = value.trim();
+    if (value.equalsIgnoreCase("true")) return true;
+    if (value.equalsIgnoreCase("false")) return false;
+    throw new IllegalArgumentException(key + " must be true or false: " + value);
+  }
+}
@@ -0,0 +1,141 @@
+package frc.robot;
+
+import edu.wpi.first.util.datalog.DataLog;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Full rate, on-robot logging of the values we care about after a match, in the wpilog format
+ * (open with AdvantageScope or the WPILib DataLogTool).
+ *
+ * <p>The robot thread only copies numbers into a preallocated ring buffer. A background thread
+ * drains the ring into the {@link DataLog}, which writes to disk on its own thread, so logging never
+ * makes the main loop wait on JNI or the file system. Entry IDs are started once in the
+ * constructor. If the ring fills up (the writer thread fell behind) new records are dropped and
+ * counted rather than blocking the loop.
+ */
+public class RobotLogger {
+  public static final int kAccelX = 0;
+  public static final int kAccelY = 1;
+  public static final int kAccelZ = 2;
+  public static final int kTilt = 3;
+  public static final int kAutoState = 4;
+  public static final int kDriveForward = 5;
+  public static final int kDriveRotation = 6;
+  public static final int kShoulderPosition = 7;
+  public static final int kShoulderPid = 8;
+  public static final int kShoulderOutput = 9;
+  public static final int kClaw = 10;
+  public static final int kBatteryVoltage = 11;
+  public static final int kPredictedVoltage = 12;
+  public static final int kDriveScale = 13;
+  private static final int kChannelCount = 14;
+  private static final String[] kNames = {
+    "Robot/Accel X", "Robot/Accel Y", "Robot/Accel Z", "Robot/Tilt", "Robot/Auto State",
+    "Robot/Drive Forward", "Robot/Drive Rotation", "Robot/Shoulder Position", "Robot/Shoulder PID",
+    "Robot/Shoulder Output", "Robot/Claw", "Robot/Battery Voltage", "Robot/Predicted Voltage",
+    "Robot/Drive Scale"
+  };
+
+  private static final long kDrainPeriodNanos = 20_000_000;
+
+  private final DataLog m_log;
+  private final int[] m_entries = new int[kChannelCount];
+  private final int m_capacity;
+  private final double[] m_values;
+  private final long[] m_timestamps;
+  private final double[] m_staging = new double[kChannelCount];
+  private final Thread m_thread;
+
+  // written only by the robot thread
+  private volatile long m_written;
+  private volatile long m_dropped;
+  // written only by the writer thread
+  private volatile long m_read;
+  private volatile boolean m_running = true;
+
+  /**
+   * @param log where to write, usually DataLogManager.getLog()
+   * @param capacity how many loops can be buffered before records are dropped
+   */
+  public RobotLogger(DataLog log, int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Capacity must be at least 1.");
+    m_log = log;
+    m_capacity = capacity;
+    m_values = new double[capacity * kChannelCount];
+    m_timestamps = new long[capacity];
+    for (int i = 0; i < kChannelCount; i++) {
+      m_entries[i] = log.start(kNames[i], "double");
+    }
+    m_thread = new Thread(this::run, "RobotLogger");
+    m_thread.setDaemon(true);
+    m_thread.start();
+  }
+
+  /** Set a value for the record being built this loop. Values carry over until set again. */
+  public void set(int channel, double value) {
+    m_staging[channel] = value;
+  }
+
+  /**
+   * Queue this loop's values for writing.
+   *
+   * @param timestamp FPGA time in microseconds, see RobotController.getFPGATime()
+   */
+  public void commit(long timestamp) {
+    long written = m_written;
+    if (written - m_read >= m_capacity) {
+      m_dropped++;
+      return;
+    }
+    int slot = (int) (written % m_capacity);
+    System.arraycopy(m_staging, 0, m_values, slot * kChannelCount, kChannelCount);
+    m_timestamps[slot] = timestamp;
+    m_written = written + 1;
+  }
+
+  private void run() {
+    while (m_running) {
+      drain();
+      LockSupport.parkNanos(kDrainPeriodNanos);
+    }
+    drain();
+  }
+
+  private void drain() {
+    long read = m_read;
+    long written = m_written;
+    while (read < written) {
+      int slot = (int) (read % m_capacity);
+      int base = slot * kChannelCount;
+      long timestamp = m_timestamps[slot];
+      for (int i = 0; i < kChannelCount; i++) {
+        m_log.appendDouble(m_entries[i], m_values[base + i], timestamp);
+      }
+      read++;
+      m_read = read;
+    }
+  }
+
+  /** @return how many loops were not logged because the ring buffer was full */
+  public long getDroppedCount() {
+    return m_dropped;
+  }
+
+  /** @return how many loops are waiting to be written */
+  public long getBacklog() {
+    return m_written - m_read;
+  }
+
+  /** Write whatever is buffered and stop the writer thread. */
+  public void close() {
+    m_running = false;
+    LockSupport.unpark(m_thread);
+    try {
+      m_thread.join(1000);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    m_log.flush();
+  }
+}
@@ -0,0 +1,275 @@
+package frc.robot;
+
+import edu.wpi.first.math.controller.ArmFeedforward;
+import edu.wpi.first.math.controller.PIDController;
+
+/**
+ * The shoulder's control law on its own: a trapezoidal profile towards the goal, a PID following
+ * the profile's setpoint, and an arm feedforward on the setpoint's angle, velocity and
+ * acceleration, so gravity is held up by the feedforward at every angle and the PID only has to
+ * correct errors. Positions and times are passed in, so the
+ * same code runs on the robot ({@link ShoulderController}) and against a simulated arm
+ * ({@link ShoulderTuner}) without the HAL.
+ *
+ * <p>The profile is the same math as WPILib's TrapezoidProfile (with a goal velocity of 0), kept in
+ * fields here because TrapezoidProfile returns a new State from every calculate and is itself
+ * rebuilt for every new goal. This runs every 5 ms, so nothing in it allocates.
+ *
+ * <p>Every move is measured as it runs: how long the arm takes to get within tolerance of the goal
+ * and the largest error from the profile on the way, see {@link #getLastMoveTime()}.
+ *
+ * <p>Positions are in encoder rotations, times in seconds.
+ */
+public class ShoulderControl {
+  /**
+   * Motor rotations per arm rotation. Not measured, it is the gearing {@link ShoulderTuner}'s arm
+   * model assumes. Check it by turning the arm one revolution and reading the encoder.
+   */
+  public static final double kGearing = 150;
+  /**
+   * Angle of the arm at encoder position 0, in radians from horizontal. Assumes the arm hangs
+   * straight down when the robot starts (the encoder is zeroed at init), not checked on the robot.
+   */
+  public static final double kZeroAngle = -Math.PI / 2;
+
+  /**
+   * A move is within tolerance once the arm is this fraction of the move from the goal, or
+   * {@link #kMinTolerance} rotations if that is more.
+   */
+  public static final double kTolerance = 0.02;
+  public static final double kMinTolerance = 0.5;
+
+  // in rotations per second and rotations per second squared
+  private static final double kMaxVelocity = 40;
+  private static final double kMaxAcceleration = 80;
+
+  private ShoulderGains m_gains;
+  private final PIDController m_pid;
+  private ArmFeedforward m_feedforward;
+
+  // the profile being followed, in the direction of travel (see startProfile)
+  private boolean m_started;
+  private double m_profileStart;
+  private double m_direction;
+  private double m_initialPosition;
+  private double m_initialVelocity;
+  private double m_goalPosition;
+  private double m_endAccel;
+  private double m_endFullSpeed;
+  private double m_endDecel;
+
+  private double m_setpointPosition;
+  private double m_setpointVelocity;
+  private double m_setpointAcceleration;
+  private double m_goal;
+  private double m_pidValue;
+  private double m_feedforwardValue;
+  private double m_output;
+
+  // the move in progress, and the last one that got within tolerance
+  private double m_moveStart;
+  private double m_moveTolerance;
+  private double m_movePeakError;
+  private boolean m_moveDone;
+  private int m_moveCount;
+  private double m_lastMoveTime = Double.NaN;
+  private double m_lastMovePeakError = Double.NaN;
+
+  /**
+   * @param gains the gains to run
+   * @param period how often {@link #calculate(double, double)} is called, in seconds
+   */
+  public ShoulderControl(ShoulderGains gains, double period) {
+    m_gains = gains;
+    m_pid = new PIDController(gains.kP, gains.kI, gains.kD, period);
+    m_feedforward = new ArmFeedforward(gains.kS, gains.kG, gains.kV, gains.kA);
+  }
+
+  /** @return the arm's angle in radians from horizontal at an encoder position */
+  public static double angleOf(double rotations) {
+    return kZeroAngle + toRadians(rotations);
+  }
+
+  /** @return the encoder position with the arm at an angle in radians from horizontal */
+  public static double rotationsOf(double angle) {
+    return (angle - kZeroAngle) / (2 * Math.PI) * kGearing;
+  }
+
+  // encoder rotations (or rotations per second) to arm radians (or radians per second)
+  private static double toRadians(double rotations) {
+    return rotations / kGearing * 2 * Math.PI;
+  }
+
+  /** Change the goal, takes effect at the next {@link #restart} or {@link #replan}. */
+  public void setGoal(double goal) {
+    m_goal = goal;
+  }
+
+  /** Forget the PID history and profile from the arm's position, standing still, to the goal. */
+  public void restart(double position, double timestamp) {
+    m_pid.reset();
+    startProfile(position, 0, timestamp);
+  }
+
+  /** Profile to the goal from the setpoint being followed, so an interrupted move keeps its velocity. */
+  public void replan(double timestamp) {
+    if (!m_started) return;
+    startProfile(m_setpointPosition, m_setpointVelocity, timestamp);
+  }
+
+  // work out when the profile stops accelerating, stops cruising and reaches the goal. Everything
+  // is flipped so the profile always moves towards positive, calculate flips it back
+  private void startProfile(double position, double velocity, double timestamp) {
+    m_direction = position > m_goal ? -1 : 1;
+    m_initialPosition = position * m_direction;
+    m_initialVelocity = Math.min(velocity * m_direction, kMaxVelocity);
+    m_goalPosition = m_goal * m_direction;
+
+    double cutoffBegin = m_initialVelocity / kMaxAcceleration;
+    double cutoffDistBegin = cutoffBegin * cutoffBegin * kMaxAcceleration / 2;
+    double fullTrapezoidDist = cutoffDistBegin + (m_goalPosition - m_initialPosition);
+    double accelerationTime = kMaxVelocity / kMaxAcceleration;
+    double fullSpeedDist = fullTrapezoidDist - accelerationTime * accelerationTime * kMaxAcceleration;
+    if (fullSpeedDist < 0) {
+      accelerationTime = Math.sqrt(fullTrapezoidDist / kMaxAcceleration);
+      fullSpeedDist = 0;
+    }
+    m_endAccel = accelerationTime - cutoffBegin;
+    m_endFullSpeed = m_endAccel + fullSpeedDist / kMaxVelocity;
+    m_endDecel = m_endFullSpeed + accelerationTime;
+
+    m_profileStart = timestamp;
+    m_setpointPosition = position;
+    m_setpointVelocity = velocity;
+    m_setpointAcceleration = 0;
+    m_started = true;
+
+    m_moveStart = timestamp;
+    m_moveTolerance = Math.max(kMinTolerance, Math.abs(m_goal - position) * kTolerance);
+    m_movePeakError = 0;
+    m_moveDone = false;
+  }
+
+  // move the setpoint to where the profile is t seconds after it started
+  private void sampleProfile(double t) {
+    double position;
+    double velocity;
+    double acceleration;
+    if (t < m_endAccel) {
+      acceleration = kMaxAcceleration;
+      velocity = m_initialVelocity + t * kMaxAcceleration;
+      position = m_initialPosition + (m_initialVelocity + t * kMaxAcceleration / 2) * t;
+    } else if (t < m_endFullSpeed) {
+      acceleration = 0;
+      velocity = kMaxVelocity;
+      position = m_initialPosition
+          + (m_initialVelocity + m_endAccel * kMaxAcceleration / 2) * m_endAccel
+          + kMaxVelocity * (t - m_endAccel);
+    } else if (t <= m_endDecel) {
+      double timeLeft = m_endDecel - t;
+      acceleration = -kMaxAcceleration;
+      velocity = timeLeft * kMaxAcceleration;
+      position = m_goalPosition - timeLeft * kMaxAcceleration / 2 * timeLeft;
+    } else {
+      acceleration = 0;
+      velocity = 0;
+      position = m_goalPosition;
+    }
+    m_setpointPosition = position * m_direction;
+    m_setpointVelocity = velocity * m_direction;
+    m_setpointAcceleration = acceleration * m_direction;
+  }
+
+  /**
+   * Step the profile and the PID.
+   *
+   * @return the motor output, -1 to 1
+   */
+  public double calculate(double position, double timestamp) {
+    if (!m_started) return 0;
+    sampleProfile(timestamp - m_profileStart);
+    m_pidValue = m_pid.calculate(position, m_setpointPosition);
+    m_feedforwardValue = m_feedforward.calculate(angleOf(m_setpointPosition),
+        toRadians(m_setpointVelocity), toRadians(m_setpointAcceleration));
+    m_output = m_feedforwardValue + m_pidValue;
+    measureMove(position, timestamp);
+    return m_output;
+  }
+
+  private void measureMove(double position, double timestamp) {
+    if (m_moveDone) return;
+    m_movePeakError = Math.max(m_movePeakError, Math.abs(m_setpointPosition - position));
+    if (Math.abs(m_goal - position) <= m_moveTolerance) {
+      m_moveDone = true;
+      m_moveCount++;
+      m_lastMoveTime = timestamp - m_moveStart;
+      m_lastMovePeakError = m_movePeakError;
+    }
+  }
+
+  public boolean isStarted() {
+    return m_started;
+  }
+
+  public ShoulderGains getGains() {
+    return m_gains;
+  }
+
+  /**
+   * Switch to new gains, for live tuning. The profile and the PID's integral carry on, so the arm
+   * does not jump. Passing the gains already in use does nothing.
+   */
+  public void setGains(ShoulderGains gains) {
+    if (gains == m_gains) return;
+    m_gains = gains;
+    m_pid.setPID(gains.kP, gains.kI, gains.kD);
+    m_feedforward = new ArmFeedforward(gains.kS, gains.kG, gains.kV, gains.kA);
+  }
+
+  public double getGoal() {
+    return m_goal;
+  }
+
+  /** @return the profiled setpoint being followed, in rotations */
+  public double getSetpoint() {
+    return m_setpointPosition;
+  }
+
+  /** @return the velocity of the profiled setpoint, in rotations per second */
+  public double getSetpointVelocity() {
+    return m_setpointVelocity;
+  }
+
+  /** @return the PID part of the last output */
+  public double getPidValue() {
+    return m_pidValue;
+  }
+
+  /** @return the feedforward part of the last output */
+  public double getFeedforwardValue() {
+    return m_feedforwardValue;
+  }
+
+  /**
+   * @return seconds from the start of the last move that got within tolerance of its goal until
+   * it did, NaN before the first one. A move replaced by a new goal before then is not counted.
+   */
+  public double getLastMoveTime() {
+    return m_lastMoveTime;
+  }
+
+  /** @return the largest distance from the profile's setpoint during that move, in rotations */
+  public double getLastMovePeakError() {
+    return m_lastMovePeakError;
+  }
+
+  /** @return how many moves have got within tolerance, goes up when the two above change */
+  public int getMoveCount() {
+    return m_moveCount;
+  }
+
+  /** @return the last output, feedforward included */
+  public double getOutput() {
+    return m_output;
+  }
+}
@@ -0,0 +1,199 @@
+package frc.robot;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.RelativeEncoder;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Position control for the shoulder. {@link #controlPeriodic()} runs on its own fast periodic (see
+ * {@link #kPeriod}, added with TimedRobot.addPeriodic) instead of the 20 ms robot loop. A new goal starts a trapezoidal
+ * motion profile from where the arm is, and the PID follows the profile's setpoint rather than
+ * jumping straight to the goal, which keeps the arm from overshooting on big moves. The control
+ * law itself is in {@link ShoulderControl}.
+ *
+ * <p>Positions are in encoder rotations, the same units as the setpoints in {@link Robot}. Not a
+ * subsystem, for the same reason as {@link Claw}.
+ */
+public class ShoulderController {
+  /** How often {@link #controlPeriodic()} should be called, in seconds. */
+  public static final double kPeriod = 0.005;
+
+  /** Most positions kept between two robot loops, see {@link #getSamples()}. */
+  public static final int kMaxSamples = 8;
+
+  /** Arm positions the driver can pick, in rotations. */
+  public static final double kStart = -1;
+  public static final double kFloor = 10;
+  public static final double kAboveFloor = 18;
+  public static final double kMid = 41;
+  public static final double kPlayerStation = 42;
+  public static final double kHigh = 47;
+
+  private final CANSparkMax m_motor;
+  private final RelativeEncoder m_encoder;
+  private final CanTrafficProfile m_profile;
+  private final DeviceMonitor.Call m_positionCall;
+  private final DeviceMonitor.Call m_setCall;
+  private final DeviceMonitor.Call m_currentCall;
+  private final ShoulderControl m_control = new ShoulderControl(ShoulderGains.kDefault, kPeriod);
+
+  private boolean m_enabled;
+  private double m_position;
+  private double m_output;
+  private double m_scale = 1;
+  private final double[] m_samples = new double[kMaxSamples];
+  private int m_sampleCount;
+
+  /**
+   * @param profile status frame periods, must keep the encoder position frame (status 2) fast
+   * @param monitor times every REVLib call made each loop
+   */
+  public ShoulderController(int deviceId, CanTrafficProfile profile, DeviceMonitor monitor) {
+    DeviceMonitor.Device device = monitor.addDevice("Shoulder (" + deviceId + ")");
+    m_positionCall = device.addCall("getPosition", 1);
+    m_setCall = device.addCall("set", 1);
+    m_currentCall = device.addCall("getOutputCurrent", 1);
+
+    //restore defaults so the encoder value gets reset, then slow the frames we do not read
+    m_motor = new CANSparkMax(deviceId, MotorType.kBrushless);
+    m_motor.restoreFactoryDefaults();
+    m_profile = profile;
+    profile.apply(m_motor);
+    m_encoder = m_motor.getEncoder();
+    m_encoder.setPosition(0);
+  }
+
+  /** Move to a new position, starting a new profile from where the arm is now. */
+  public void setGoal(double goal) {
+    if (goal == m_control.getGoal() && m_control.isStarted()) return;
+    m_control.setGoal(goal);
+    if (m_enabled) {
+      m_control.replan(Timer.getFPGATimestamp());
+    } else {
+      m_control.restart(m_encoder.getPosition(), Timer.getFPGATimestamp());
+    }
+  }
+
+  /** Start controlling the arm, the profile restarts from the current position. */
+  public void enable() {
+    m_enabled = false;
+    m_control.restart(m_encoder.getPosition(), Timer.getFPGATimestamp());
+    m_enabled = true;
+  }
+
+  /** Stop controlling the arm. The motor is left alone, like it was outside teleop. */
+  public void disable() {
+    m_enabled = false;
+  }
+
+  /** Step the profile and the PID, call every {@link #kPeriod} seconds. */
+  public void controlPeriodic() {
+    long start = System.nanoTime();
+    m_position = m_encoder.getPosition();
+    m_positionCall.record(System.nanoTime() - start, m_motor.getLastError());
+    if (m_sampleCount < kMaxSamples) m_samples[m_sampleCount++] = m_position;
+    if (!m_enabled) return;
+
+    m_output = m_control.calculate(m_position, Timer.getFPGATimestamp()) * m_scale;
+    start = System.nanoTime();
+    m_motor.set(m_output);
+    m_setCall.record(System.nanoTime() - start, m_motor.getLastError());
+  }
+
+  /** See {@link ShoulderControl#setGains(ShoulderGains)}, cheap to call every loop. */
+  public void setGains(ShoulderGains gains) {
+    m_control.setGains(gains);
+  }
+
+  /** Scale the output from now on, for the {@link PowerManager}. */
+  public void setScale(double scale) {
+    m_scale = scale;
+  }
+
+  /** @return the motor current, in amps */
+  public double getCurrent() {
+    long start = System.nanoTime();
+    double current = m_motor.getOutputCurrent();
+    m_currentCall.record(System.nanoTime() - start, m_motor.getLastError());
+    return current;
+  }
+
+  /**
+   * Apply the status frame periods again, after a brownout may have reset the Spark MAX. The
+   * encoder position is not reset, if the Spark MAX did reset it has lost it anyway.
+   */
+  public void reconfigure() {
+    m_profile.apply(m_motor);
+  }
+
+  /** Overwrite the encoder position, for simulation and {@link MatchReplay} only. */
+  public void setSimulatedPosition(double rotations) {
+    m_encoder.setPosition(rotations);
+  }
+
+  /** @return the encoder position read by the last periodic call, in rotations */
+  public double getPosition() {
+    return m_position;
+  }
+
+  /**
+   * @return the positions read by each periodic call since {@link #clearSamples()}, oldest first,
+   *     the first {@link #getSampleCount()} are valid. For {@link MatchRecorder}.
+   */
+  public double[] getSamples() {
+    return m_samples;
+  }
+
+  public int getSampleCount() {
+    return m_sampleCount;
+  }
+
+  /** Start collecting positions again, call once per robot loop. */
+  public void clearSamples() {
+    m_sampleCount = 0;
+  }
+
+  /** @return the profiled setpoint being followed, in rotations */
+  public double getSetpoint() {
+    return m_control.getSetpoint();
+  }
+
+  public double getGoal() {
+    return m_control.getGoal();
+  }
+
+  /** @return the PID part of the last output */
+  public double getPidValue() {
+    return m_control.getPidValue();
+  }
+
+  /** @return the feedforward part of the last output */
+  public double getFeedforwardValue() {
+    return m_control.getFeedforwardValue();
+  }
+
+  /** See {@link ShoulderControl#getLastMoveTime()}. */
+  public double getLastMoveTime() {
+    return m_control.getLastMoveTime();
+  }
+
+  /** See {@link ShoulderControl#getLastMovePeakError()}. */
+  public double getLastMovePeakError() {
+    return m_control.getLastMovePeakError();
+  }
+
+  /** See {@link ShoulderControl#getMoveCount()}. */
+  public int getMoveCount() {
+    return m_control.getMoveCount();
+  }
+
+  /** @return the last output sent to the motor, feedforward included */
+  public double getOutput() {
+    return m_output;
+  }
+
+  public boolean isEnabled() {
+    return m_enabled;
+  }
+}
@@ -0,0 +1,51 @@
+package frc.robot;
+
+/**
+ * Gains for the shoulder position loop. Immutable so the tuner can hand one to each thread, the
+ * robot uses {@link #kDefault}.
+ *
+ * <p>The feedforward terms are WPILib's ArmFeedforward ones, in motor output (-1 to 1) rather than
+ * volts, against the arm's angle in radians from horizontal (see {@link ShoulderControl#angleOf}).
+ */
+public final class ShoulderGains {
+  /**
+   * The hand tuned PID the robot has been running, with an arm feedforward in place of the constant
+   * 0.01 it used to add. None of the feedforward is measured yet. kG is set so the feedforward at
+   * the mid setpoint is that same 0.01, until it is measured on the arm (the output that just holds
+   * it at horizontal). kV and kA come from the arm model in {@link ShoulderTuner}, a NEO through
+   * 150:1 holding a 0.75 m, 2.5 kg arm, all of which are guesses. The model's own kG would be 0.024.
+   */
+  public static final ShoulderGains kDefault = new ShoulderGains(0.016, 0.002, 0.0, 0.0, 0.0101, 0.25, 0.0012);
+
+  public final double kP;
+  public final double kI;
+  public final double kD;
+  /** Output to overcome friction, in the direction of the profile's velocity. */
+  public final double kS;
+  /** Output that holds the arm up against gravity at horizontal, scaled by the cosine of the angle. */
+  public final double kG;
+  /** Output per radian per second of the profile's velocity. */
+  public final double kV;
+  /** Output per radian per second squared of the profile's acceleration. */
+  public final double kA;
+
+  public ShoulderGains(double kP, double kI, double kD, double kS, double kG, double kV, double kA) {
+    this.kP = kP;
+    this.kI = kI;
+    this.kD = kD;
+    this.kS = kS;
+    this.kG = kG;
+    this.kV = kV;
+    this.kA = kA;
+  }
+
+  /** Copy with different PID gains and gravity feedforward, the other feedforward terms are kept. */
+  public ShoulderGains withPid(double kP, double kI, double kD, double kG) {
+    return new ShoulderGains(kP, kI, kD, kS, kG, kV, kA);
+  }
+
+  @Override
+  public String toString() {
+    return "kP=" + kP + " kI=" + kI + " kD=" + kD + " kS=" + kS + " kG=" + kG + " kV=" + kV + " kA=" + kA;
+  }
+}
@@ -0,0 +1,234 @@
+package frc.robot;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.simulation.SingleJointedArmSim;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Searches shoulder gains against a simulated arm. The shoulder (a NEO on CAN ID 5) is modelled
+ * with WPILib's {@link SingleJointedArmSim} and driven by {@link ShoulderControl}, the same code
+ * {@link ShoulderController} runs on the robot, at the same 5 ms period. Every candidate is tried
+ * on every move between the driver's setpoints, candidates are spread over all cores with a
+ * parallel stream (the common fork-join pool).
+ *
+ * <p>For each candidate the rise time (10% to 90% of the move), overshoot and settling time are
+ * written to build/shoulderTuning.csv, a move that never settles counts as failed. The candidates
+ * that no other candidate beats on all of these (the Pareto front) are printed, next to the gains
+ * the robot runs now.
+ *
+ * <p>The arm's gearing, length and mass below are estimates, check them against the robot before
+ * trusting the absolute numbers. Run with {@code ./gradlew tuneShoulder}.
+ */
+public final class ShoulderTuner {
+  private static final double[] kSetpoints = {
+    ShoulderController.kStart, ShoulderController.kFloor, ShoulderController.kAboveFloor,
+    ShoulderController.kMid, ShoulderController.kPlayerStation, ShoulderController.kHigh
+  };
+
+  // arm model, the gearing and where the encoder is zeroed are ShoulderControl's
+  private static final double kArmLength = 0.75;
+  private static final double kArmMass = 2.5;
+  private static final double kBatteryVoltage = 12;
+
+  // a move is settled once it stays within ShoulderControl's tolerance
+  private static final double kMoveTime = 4.0;
+
+  private static final double[] kPValues = {0.005, 0.008, 0.011, 0.016, 0.022, 0.03, 0.04, 0.055};
+  private static final double[] kIValues = {0, 0.001, 0.002, 0.004, 0.008};
+  private static final double[] kDValues = {0, 0.0002, 0.0005, 0.001};
+  // the model's kG is 0.024, the default's 0.0101 matches the old constant feedforward at mid. The
+  // velocity and acceleration terms are kept at the default's
+  private static final double[] kGValues = {0, 0.0101, 0.018, 0.024, 0.03};
+
+  private ShoulderTuner() {}
+
+  /** How one candidate did over every move. Times are in seconds, overshoot in percent of the move. */
+  public static final class Result {
+    public final ShoulderGains gains;
+    public final int moves;
+    public final int failures;
+    public final double meanRiseTime;
+    public final double maxOvershoot;
+    public final double meanSettlingTime;
+    public final double worstSettlingTime;
+
+    Result(ShoulderGains gains, int moves, int failures, double meanRiseTime, double maxOvershoot,
+        double meanSettlingTime, double worstSettlingTime) {
+      this.gains = gains;
+      this.moves = moves;
+      this.failures = failures;
+      this.meanRiseTime = meanRiseTime;
+      this.maxOvershoot = maxOvershoot;
+      this.meanSettlingTime = meanSettlingTime;
+      this.worstSettlingTime = worstSettlingTime;
+    }
+
+    /** True if this is at least as good as other on every metric and better on one. */
+    boolean dominates(Result other) {
+      boolean noWorse = failures <= other.failures
+          && meanRiseTime <= other.meanRiseTime
+          && maxOvershoot <= other.maxOvershoot
+          && meanSettlingTime <= other.meanSettlingTime;
+      boolean better = failures < other.failures
+          || meanRiseTime < other.meanRiseTime
+          || maxOvershoot < other.maxOvershoot
+          || meanSettlingTime < other.meanSettlingTime;
+      return noWorse && better;
+    }
+  }
+
+  private static SingleJointedArmSim createArm() {
+    return new SingleJointedArmSim(
+        DCMotor.getNEO(1),
+        ShoulderControl.kGearing,
+        SingleJointedArmSim.estimateMOI(kArmLength, kArmMass),
+        kArmLength,
+        ShoulderControl.angleOf(ShoulderController.kStart - 2),
+        ShoulderControl.angleOf(ShoulderController.kHigh + 5),
+        true);
+  }
+
+  /**
+   * Run every move between the setpoints with one set of gains. The arm starts each move
+   * standing still at the previous setpoint, the way teleopPeriodic hands a new setpoint to the
+   * shoulder when a button is pressed.
+   */
+  public static Result evaluate(ShoulderGains gains) {
+    SingleJointedArmSim arm = createArm();
+    double period = ShoulderController.kPeriod;
+    int steps = (int) Math.round(kMoveTime / period);
+    int moves = 0;
+    int failures = 0;
+    double riseTotal = 0;
+    double settleTotal = 0;
+    double worstSettle = 0;
+    double maxOvershoot = 0;
+
+    for (double from : kSetpoints) {
+      for (double to : kSetpoints) {
+        if (from == to) continue;
+        moves++;
+        double move = to - from;
+        double tolerance = Math.max(ShoulderControl.kMinTolerance, Math.abs(move) * ShoulderControl.kTolerance);
+
+        arm.setState(VecBuilder.fill(ShoulderControl.angleOf(from), 0));
+        ShoulderControl control = new ShoulderControl(gains, period);
+        control.setGoal(to);
+        control.restart(from, 0);
+
+        double riseStart = Double.NaN;
+        double riseEnd = Double.NaN;
+        double settled = 0;
+        double peak = 0;
+        double position = from;
+        for (int i = 0; i < steps; i++) {
+          double output = control.calculate(position, i * period);
+          arm.setInputVoltage(Math.max(-1, Math.min(1, output)) * kBatteryVoltage);
+          arm.update(period);
+          position = ShoulderControl.rotationsOf(arm.getAngleRads());
+
+          double time = (i + 1) * period;
+          double progress = (position - from) / move;
+          if (Double.isNaN(riseStart) && progress >= 0.1) riseStart = time;
+          if (Double.isNaN(riseEnd) && progress >= 0.9) riseEnd = time;
+          peak = Math.max(peak, progress);
+          if (Math.abs(to - position) > tolerance) settled = time;
+        }
+
+        if (Double.isNaN(riseEnd) || settled >= kMoveTime) {
+          failures++;
+          continue;
+        }
+        riseTotal += riseEnd - riseStart;
+        settleTotal += settled;
+        worstSettle = Math.max(worstSettle, settled);
+        maxOvershoot = Math.max(maxOvershoot, (peak - 1) * 100);
+      }
+    }
+
+    int passed = moves - failures;
+    return new Result(gains, moves, failures,
+        passed > 0 ? riseTotal / passed : Double.NaN,
+        maxOvershoot,
+        passed > 0 ? settleTotal / passed : Double.NaN,
+        passed > 0 ? worstSettle : Double.NaN);
+  }
+
+  static List<ShoulderGains> candidates() {
+    List<ShoulderGains> candidates = new ArrayList<>();
+    candidates.add(ShoulderGains.kDefault);
+    for (double p : kPValues) {
+      for (double i : kIValues) {
+        for (double d : kDValues) {
+          for (double g : kGValues) {
+            candidates.add(ShoulderGains.kDefault.withPid(p, i, d, g));
+          }
+        }
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * The results no other result dominates. Failed moves count as a fourth metric, so a candidate
+   * that never finishes some moves only makes the front when nothing finishes them all.
+   */
+  static List<Result> paretoFront(List<Result> results) {
+    List<Result> measured = results.stream()
+        .filter(result -> result.failures < result.moves)
+        .collect(Collectors.toList());
+    return measured.stream()
+        .filter(result -> measured.stream().noneMatch(other -> other.dominates(result)))
+        .sorted(Comparator.comparingInt((Result result) -> result.failures)
+            .thenComparingDouble(result -> result.meanSettlingTime))
+        .collect(Collectors.toList());
+  }
+
+  public static void main(String... args) throws IOException {
+    Path output = Paths.get(args.length > 0 ? args[0] : "build/shoulderTuning.csv");
+
+    List<ShoulderGains> candidates = candidates();
+    long start = System.nanoTime();
+    List<Result> results = candidates.parallelStream()
+        .map(ShoulderTuner::evaluate)
+        .collect(Collectors.toList());
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    if (output.getParent() != null) Files.createDirectories(output.getParent());
+    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output))) {
+      writer.println("kP,kI,kD,kS,kG,kV,kA,moves,failures,meanRiseTime,maxOvershootPercent,"
+          + "meanSettlingTime,worstSettlingTime");
+      for (Result result : results) {
+        ShoulderGains gains = result.gains;
+        writer.println(gains.kP + "," + gains.kI + "," + gains.kD + "," + gains.kS + "," + gains.kG + ","
+            + gains.kV + "," + gains.kA + ","
+            + result.moves + "," + result.failures + "," + result.meanRiseTime + ","
+            + result.maxOvershoot + "," + result.meanSettlingTime + "," + result.worstSettlingTime);
+      }
+    }
+
+    System.out.printf("%d candidates x %d moves in %.1f s on %d cores%n", candidates.size(),
+        results.get(0).moves, seconds, Runtime.getRuntime().availableProcessors());
+    System.out.println("current: " + format(results.get(0)));
+    System.out.println("pareto front:");
+    for (Result result : paretoFront(results)) {
+      System.out.println("  " + format(result));
+    }
+    System.out.println("all results written to " + output.toAbsolutePath());
+  }
+
+  private static String format(Result result) {
+    return String.format("%s -> rise %.2f s, overshoot %.1f%%, settle %.2f s (worst %.2f s), %d/%d moves failed",
+        result.gains, result.meanRiseTime, result.maxOvershoot, result.meanSettlingTime,
+        result.worstSettlingTime, result.failures, result.moves);
+  }
+}
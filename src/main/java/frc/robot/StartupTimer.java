@@ -0,0 +1,30 @@
+package frc.robot;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DataLogManager;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How long the robot code takes to start, measured from when the JVM started. Each step is
+ * published to the "Startup" NetworkTables table (in seconds) and written to the console and the
+ * log as it happens. "first loop" is the one to watch, compare it with and without the class data
+ * sharing archive the deploy builds (see build.gradle).
+ */
+public class StartupTimer {
+  private final NetworkTable m_table = NetworkTableInstance.getDefault().getTable("Startup");
+  // kept so the topics stay published
+  private final List<DoublePublisher> m_publishers = new ArrayList<>();
+
+  /** Record that a step was reached now. Called from the robot thread and the background init. */
+  public synchronized void mark(String step) {
+    double seconds = ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+    DoublePublisher publisher = m_table.getDoubleTopic(step + " s").publish();
+    publisher.set(seconds);
+    m_publishers.add(publisher);
+    DataLogManager.log(String.format("Startup: %s at %.3f s", step, seconds));
+  }
+}
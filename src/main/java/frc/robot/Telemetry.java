@@ -0,0 +1,127 @@
+package frc.robot;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import java.util.ArrayList;
+
+/**
+ * Dashboard values that only go out when they change. Entries are registered once at startup and
+ * keep their NetworkTables publisher, so setting a value is a field write with no key lookup.
+ * {@link #flush(double)} is called once per loop and publishes every entry that moved by more than
+ * its deadband, no more often than its publish period allows. A change held back by the publish
+ * period is kept and goes out on a later loop, so the dashboard never gets stuck on a stale value.
+ *
+ * <p>Entries go to the SmartDashboard table, so the dashboard keys stay the same as with
+ * {@link edu.wpi.first.wpilibj.smartdashboard.SmartDashboard#putNumber}.
+ */
+public class Telemetry {
+  private final NetworkTable m_table;
+  private final ArrayList<DoubleEntry> m_doubles = new ArrayList<>();
+  private final ArrayList<StringEntry> m_strings = new ArrayList<>();
+
+  public Telemetry() {
+    this(NetworkTableInstance.getDefault().getTable("SmartDashboard"));
+  }
+
+  public Telemetry(NetworkTable table) {
+    m_table = table;
+  }
+
+  /**
+   * Register a number. Call this at init, not in a periodic function.
+   *
+   * @param key the dashboard key
+   * @param deadband changes no bigger than this are not published
+   * @param periodSeconds the shortest time between two publishes of this key
+   */
+  public DoubleEntry addNumber(String key, double deadband, double periodSeconds) {
+    DoubleEntry entry = new DoubleEntry(m_table.getDoubleTopic(key).publish(), deadband, periodSeconds);
+    m_doubles.add(entry);
+    return entry;
+  }
+
+  /**
+   * Register a string. Call this at init, not in a periodic function. Strings are compared with
+   * equals, so passing the same constants every loop publishes nothing.
+   */
+  public StringEntry addString(String key, double periodSeconds) {
+    StringEntry entry = new StringEntry(m_table.getStringTopic(key).publish(), periodSeconds);
+    m_strings.add(entry);
+    return entry;
+  }
+
+  /** Publish every entry that changed and is due. Call once per loop. */
+  public void flush(double timestamp) {
+    for (int i = 0; i < m_doubles.size(); i++) {
+      m_doubles.get(i).flush(timestamp);
+    }
+    for (int i = 0; i < m_strings.size(); i++) {
+      m_strings.get(i).flush(timestamp);
+    }
+  }
+
+  public static final class DoubleEntry {
+    private final DoublePublisher m_publisher;
+    private final double m_deadband;
+    private final double m_period;
+    private double m_value;
+    private double m_published;
+    private double m_lastPublish;
+    private boolean m_everPublished;
+
+    private DoubleEntry(DoublePublisher publisher, double deadband, double period) {
+      m_publisher = publisher;
+      m_deadband = deadband;
+      m_period = period;
+    }
+
+    public void set(double value) {
+      m_value = value;
+    }
+
+    public double get() {
+      return m_value;
+    }
+
+    private void flush(double timestamp) {
+      if (m_everPublished) {
+        if (m_value == m_published) return;
+        if (Math.abs(m_value - m_published) <= m_deadband) return;
+        if (timestamp - m_lastPublish < m_period) return;
+      }
+      m_publisher.set(m_value);
+      m_published = m_value;
+      m_lastPublish = timestamp;
+      m_everPublished = true;
+    }
+  }
+
+  public static final class StringEntry {
+    private final StringPublisher m_publisher;
+    private final double m_period;
+    private String m_value = "";
+    private String m_published;
+    private double m_lastPublish;
+
+    private StringEntry(StringPublisher publisher, double period) {
+      m_publisher = publisher;
+      m_period = period;
+    }
+
+    public void set(String value) {
+      m_value = value == null ? "" : value;
+    }
+
+    private void flush(double timestamp) {
+      if (m_published != null) {
+        if (m_value.equals(m_published)) return;
+        if (timestamp - m_lastPublish < m_period) return;
+      }
+      m_publisher.set(m_value);
+      m_published = m_value;
+      m_lastPublish = timestamp;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package frc.robot;
+
+/**
+ * Fixed bucket histogram of durations. Buckets are linear, {@code bucketWidthMicros} wide, with
+ * one extra bucket catching everything past the last edge. Recording only increments a counter,
+ * so it can be used every loop without allocating. Percentiles are reported as the upper edge of
+ * the bucket they fall in, the max is exact.
+ */
+public class TimingHistogram {
+  private final long m_bucketWidthNanos;
+  private final long[] m_counts;
+  private long m_total;
+  private long m_maxNanos;
+
+  public TimingHistogram(int bucketWidthMicros, int bucketCount) {
+    if (bucketWidthMicros <= 0 || bucketCount <= 0)
+      throw new IllegalArgumentException("Bucket width and count must be positive.");
+    m_bucketWidthNanos = bucketWidthMicros * 1000L;
+    m_counts = new long[bucketCount + 1];
+  }
+
+  public void record(long nanos) {
+    if (nanos < 0) nanos = 0;
+    int bucket = (int) Math.min(nanos / m_bucketWidthNanos, m_counts.length - 1);
+    m_counts[bucket]++;
+    m_total++;
+    if (nanos > m_maxNanos) m_maxNanos = nanos;
+  }
+
+  /**
+   * @param percentile between 0 and 1, for example 0.99
+   * @return the duration in milliseconds below which that fraction of samples fell, 0 if empty
+   */
+  public double getPercentileMillis(double percentile) {
+    if (m_total == 0) return 0;
+    long target = (long) Math.ceil(percentile * m_total);
+    if (target < 1) target = 1;
+    long seen = 0;
+    for (int i = 0; i < m_counts.length - 1; i++) {
+      seen += m_counts[i];
+      if (seen >= target) return (i + 1) * m_bucketWidthNanos / 1e6;
+    }
+    // only the overflow bucket is left, the max is the best bound we have
+    return getMaxMillis();
+  }
+
+  public double getMaxMillis() {
+    return m_maxNanos / 1e6;
+  }
+
+  public long getCount() {
+    return m_total;
+  }
+
+  public void reset() {
+    for (int i = 0; i < m_counts.length; i++) {
+      m_counts[i] = 0;
+    }
+    m_total = 0;
+    m_maxNanos = 0;
+  }
+}
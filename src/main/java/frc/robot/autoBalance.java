@@ -1,11 +1,16 @@
 package frc.robot;
 
 import edu.wpi.first.wpilibj.BuiltInAccelerometer;
+import edu.wpi.first.wpilibj.TimedRobot;
 
 public class autoBalance {
     private BuiltInAccelerometer mRioAccel;
-    private int state;
-    private int debounceCount;
+    private AttitudeEstimator mAttitude;
+    private AutoRoutine mBalanceRoutine;
+    private AutoRoutine mScoreRoutine;
+    private AutoRoutine mScoreAndDriveRoutine;
+    private AutoRoutine mScoreAndBalanceRoutine;
+    private AutoRoutine mActiveRoutine;
     private double robotSpeedSlow;
     private double robotSpeedFast;
     private double onChargeStationDegree;
@@ -15,223 +20,173 @@ public class autoBalance {
 	private double scoringBackUpTime;
 	private double doubleTapTime;
     private double escapeTime;
+    private double tiltFilterTime;
+    private BalanceGains balanceGains;
+    private AutoBalanceConfig config;
+    private double period;
 
     public autoBalance(){
-        mRioAccel = new BuiltInAccelerometer();
-        state = 0;
-        debounceCount = 0;
-        
-        /**********
-         * CONFIG *
-         **********/
-        //Speed the robot drived while scoring/approaching station, default = 0.4
-        robotSpeedFast = 0.75;
-        
-        //Speed the robot drives while balancing itself on the charge station.
-        //Should be roughly half the fast speed, to make the robot more accurate, default = 0.2
-        robotSpeedSlow = 0.6;
-
-        //Angle where the robot knows it is on the charge station, default = 13.0
-        onChargeStationDegree = -82.0;
-
-        //Angle where the robot can assume it is level on the charging station
-        //Used for exiting the drive forward sequence as well as for auto balancing, default = 6.0
-        levelDegree = -71.0;
-
-        //Amount of time a sensor condition needs to be met before changing states in seconds
-        //Reduces the impact of sensor noise, but too high can make the auto run slower, default = 0.2
-        debounceTime = 0.35;
-		
-		//Amount of time to drive towards the target when trying to bump the game piece off
-		//Time it takes to go from starting position to hit the scoring target
-		singleTapTime = 0.3;
-		
-		//Amount of time to drive away from knocked over gamepiece before the second tap
-		scoringBackUpTime = 0.3;
-		
-		//Amount of time to drive forward to secure the scoring of the gamepiece
-		doubleTapTime = 1;
-
-        //Amount of time to drive away from the grid to get out of the community in seconds
-        escapeTime = 2;
+        this(AutoBalanceConfig.kDefault);
+    }
+
+    public autoBalance(AutoBalanceConfig config){
+        this(config, new BuiltInAccelerometer());
+    }
+
+    //accel may be null when the samples are fed in with update(timestamp, x, y, z),
+    //for example by the simulation, which runs without the HAL
+    public autoBalance(AutoBalanceConfig config, BuiltInAccelerometer accel){
+        this(config, accel, TimedRobot.kDefaultPeriod);
+    }
+
+    //period is the robot loop period in seconds, it is only used by secondsToTicks. The routines
+    //and the tilt filter time themselves with the sample timestamps, so they act the same at any period
+    public autoBalance(AutoBalanceConfig config, BuiltInAccelerometer accel, double period){
+        if (period <= 0)
+            throw new IllegalArgumentException("Period must be positive.");
+        mRioAccel = accel;
+        this.period = period;
+        mAttitude = new AttitudeEstimator(mRioAccel, config.tiltFilterTime);
+        setConfig(config);
+    }
+
+    //switch to another config, rebuilding every routine. Allocates, so call it between autos
+    //(autonomousInit), never while one is running. Passing the config already in use does nothing
+    public void setConfig(AutoBalanceConfig config){
+        if (config == this.config)
+            return;
+        this.config = config;
+
+        //see AutoBalanceConfig for what each of these does
+        robotSpeedFast = config.robotSpeedFast;
+        robotSpeedSlow = config.robotSpeedSlow;
+        onChargeStationDegree = config.onChargeStationDegree;
+        levelDegree = config.levelDegree;
+        debounceTime = config.debounceTime;
+        tiltFilterTime = config.tiltFilterTime;
+		singleTapTime = config.singleTapTime;
+		scoringBackUpTime = config.scoringBackUpTime;
+		doubleTapTime = config.doubleTapTime;
+        escapeTime = config.escapeTime;
+        balanceGains = config.balanceGains;
+
+        mAttitude.setTimeConstant(tiltFilterTime);
+
+        /************
+         * ROUTINES *
+         ************/
+        //drive back, then forwards, then back again to knock off and score game piece
+        AutoSegment singleTap = AutoSegment.drive(-robotSpeedFast, singleTapTime);
+        AutoSegment backUp = AutoSegment.drive(robotSpeedFast, scoringBackUpTime);
+        AutoSegment doubleTap = AutoSegment.drive(-robotSpeedFast, doubleTapTime);
+
+        //drive forwards to approach station, exit when tilt is detected
+        AutoSegment approach = AutoSegment.driveUntilTiltAbove(robotSpeedFast, onChargeStationDegree, debounceTime);
+        //driving up charge station, drive slower, stopping when level
+        AutoSegment climb = AutoSegment.driveUntilTiltBelow(robotSpeedSlow, levelDegree, debounceTime);
+
+        mBalanceRoutine = new AutoRoutine("Balance", approach, climb,
+            //on charge station, nudge towards level and wait for end of auto
+            balanceGains != null ? AutoSegment.balancePD(balanceGains, tiltFilterTime)
+                : AutoSegment.balance(0.1, levelDegree, debounceTime));
+        mScoreRoutine = new AutoRoutine("Score", singleTap, backUp, doubleTap);
+        mScoreAndDriveRoutine = new AutoRoutine("Score + Drive", singleTap, backUp, doubleTap,
+            //leave the community
+            AutoSegment.drive(robotSpeedFast, escapeTime));
+        mScoreAndBalanceRoutine = new AutoRoutine("Score + Balance", singleTap, backUp, doubleTap, approach, climb,
+            //on charge station, ensure robot is flat, then end auto
+            balanceGains != null ? AutoSegment.balancePD(balanceGains, tiltFilterTime)
+                : AutoSegment.balance(robotSpeedSlow, levelDegree, debounceTime));
+        mActiveRoutine = null;
+    }
+
+    public AutoBalanceConfig getConfig(){
+        return config;
+    }
+
+    //sample the accelerometer, call once per loop before any of the routines or getters below
+    public void update(){
+        mAttitude.update();
+    }
 
+    //same as update(), with an accelerometer sample (in g) from somewhere other than the rio
+    public void update(double timestamp, double x, double y, double z){
+        mAttitude.update(timestamp, x, y, z);
     }
 
     public double getPitch(){
-        return Math.atan2((- mRioAccel.getX()) , Math.sqrt(mRioAccel.getY() * mRioAccel.getY() + mRioAccel.getZ() * mRioAccel.getZ())) * 57.3;
+        return mAttitude.getPitch();
     }
 
     public double getRoll(){
-        return Math.atan2(mRioAccel.getY() , mRioAccel.getZ()) * 57.3;
+        return mAttitude.getRoll();
     }
 
     //returns the magnititude of the robot's tilt calculated by the root of
     //pitch^2 + roll^2, used to compensate for diagonally mounted rio
     public double getTilt(){
-        if((getPitch() + getRoll())>= 0){
-            return Math.sqrt(getPitch()*getPitch() + getRoll()*getRoll());
-        } else {
-            return -Math.sqrt(getPitch()*getPitch() + getRoll()*getRoll());
-        }
+        return mAttitude.getTilt();
+    }
+
+    //degrees per second, see AttitudeEstimator.getTiltRate
+    public double getTiltRate(){
+        return mAttitude.getTiltRate();
+    }
+
+    public AttitudeEstimator getAttitude(){
+        return mAttitude;
+    }
+
+    //segment index of the routine that ran last, -1 if none has run since the last reset
+    public int getState(){
+        return mActiveRoutine != null ? mActiveRoutine.getSegmentIndex() : -1;
     }
 
+    //true while the routine that ran last is in its final segment, for the balance routines that
+    //is the stage that levels the charge station
+    public boolean isBalancing(){
+        return mActiveRoutine != null && mActiveRoutine.isOnLastSegment();
+    }
+
+    //number of loops that last time seconds at this robot's period
     public int secondsToTicks(double time){
-        return (int)(time*50);
+        return (int)Math.round(time/period);
+    }
+
+    //start every routine over from its first segment, call when autonomous starts
+    public void reset(){
+        mBalanceRoutine.reset();
+        mScoreRoutine.reset();
+        mScoreAndDriveRoutine.reset();
+        mScoreAndBalanceRoutine.reset();
+        mActiveRoutine = null;
     }
 
     //routine for automatically driving onto and engaging the charge station.
     //returns a value from -1.0 to 1.0, which left and right motors should be set to.
     public double autoBalanceRoutine(){
-        switch (state){
-            //drive forwards to approach station, exit when tilt is detected
-            case 0:
-                if(getTilt() > onChargeStationDegree){
-                    debounceCount++;
-                }
-                if(debounceCount > secondsToTicks(debounceTime)){
-                    state = 1;
-                    debounceCount = 0;
-                    return robotSpeedSlow;
-                }
-                return robotSpeedFast;
-            //driving up charge station, drive slower, stopping when level
-            case 1:
-                if (getTilt() < levelDegree){
-                    debounceCount++; 
-                }
-                if(debounceCount > secondsToTicks(debounceTime)){
-                    state = 2;
-                    debounceCount = 0;
-                    return 0;
-                }
-                return robotSpeedSlow;
-            //on charge station, stop motors and wait for end of auto
-            case 2:
-                if(Math.abs(getTilt()) <= levelDegree/2){
-                    debounceCount++;
-                }
-                if(debounceCount>secondsToTicks(debounceTime)){
-                    state = 4;
-                    debounceCount = 0;
-                    return 0;
-                }
-                if(getTilt() >= levelDegree) {
-                    return 0.1;
-                } else if(getTilt() <= -levelDegree) {
-                    return -0.1;
-                }
-            case 3:
-                return 0;
-        }
-        return 0;
+        mActiveRoutine = mBalanceRoutine;
+        return mBalanceRoutine.calculate(mAttitude.getTimestamp(), getTilt(), getTiltRate());
     }
 
     //  auto period by scoring
     // a game piece on the back bumper of the robot
     public double score(){
-        switch (state){
-            //drive back, then forwards, then back again to knock off and score game piece
-            case 0:
-                debounceCount++;
-                if(debounceCount < secondsToTicks(singleTapTime)){
-                    return -robotSpeedFast;
-                } else if(debounceCount < secondsToTicks(singleTapTime+scoringBackUpTime)){
-                    return robotSpeedFast;
-                } else if(debounceCount < secondsToTicks(singleTapTime+scoringBackUpTime+doubleTapTime)){
-                    return -robotSpeedFast;
-                } else {
-                    debounceCount = 0;
-                    state = 1;
-                    return 0;
-                }
-            }
-        return 0;
+        mActiveRoutine = mScoreRoutine;
+        return mScoreRoutine.calculate(mAttitude.getTimestamp(), getTilt(), getTiltRate());
     }
 
     //  auto period - score and drive out of the community
     //  a game piece on the back bumper of the robot
     public double scoreAndDrive(){
-        switch (state){
-            //drive back, then forwards, then back again to knock off and score game piece, then leave the community
-            case 0:
-                debounceCount++;
-                if(debounceCount < secondsToTicks(singleTapTime)){
-                    return -robotSpeedFast;
-                } else if(debounceCount < secondsToTicks(singleTapTime+scoringBackUpTime)){
-                    return robotSpeedFast;
-                } else if(debounceCount < secondsToTicks(singleTapTime+scoringBackUpTime+doubleTapTime)){
-                    return -robotSpeedFast;
-                } else if(debounceCount < secondsToTicks(singleTapTime+scoringBackUpTime+doubleTapTime+escapeTime)){
-                    return robotSpeedFast;
-                }else {
-                    debounceCount = 0;
-                    state = 1;
-                    return 0;
-                }
-        }
-        return 0;
+        mActiveRoutine = mScoreAndDriveRoutine;
+        return mScoreAndDriveRoutine.calculate(mAttitude.getTimestamp(), getTilt(), getTiltRate());
     }
 
     // Same as auto balance above, but starts auto period by scoring
     // a game piece on the back bumper of the robot
     public double scoreAndBalance(){
-        System.out.println("Tilt: "+getTilt());
-        System.out.println("State: "+state);
-        switch (state){
-            //drive back, then forwards, then back again to knock off and score game piece
-            case 0:
-                debounceCount++;
-                if(debounceCount < secondsToTicks(singleTapTime)){
-                    return -robotSpeedFast;
-                } else if(debounceCount < secondsToTicks(singleTapTime+scoringBackUpTime)){
-                    return robotSpeedFast;
-                } else if(debounceCount < secondsToTicks(singleTapTime+scoringBackUpTime+doubleTapTime)){
-                    return -robotSpeedFast;
-                } else {
-                    debounceCount = 0;
-                    state = 1;
-                    return 0;
-                }
-            //drive forwards until on charge station
-            case 1:
-                if(getTilt() > onChargeStationDegree){
-                    debounceCount++;
-                }
-                if(debounceCount > secondsToTicks(debounceTime)){
-                    state = 2;
-                    debounceCount = 0;
-                    return robotSpeedSlow;
-                }
-                return robotSpeedFast;
-            //driving up charge station, drive slower, stopping when level
-            case 2:
-                if (getTilt() < levelDegree){
-                    debounceCount++; 
-                }
-                if(debounceCount > secondsToTicks(debounceTime)){
-                    state = 3;
-                    debounceCount = 0;
-                    return 0;
-                }
-                return robotSpeedSlow;
-            //on charge station, ensure robot is flat, then end auto
-            case 3:
-                if(Math.abs(getTilt()) <= levelDegree/2){
-                    debounceCount++;
-                }
-                if(debounceCount>secondsToTicks(debounceTime)){
-                    state = 4;
-                    debounceCount = 0;
-                    return 0;
-                }
-                if(getTilt() >= levelDegree) {
-                    return robotSpeedSlow;
-                } else if(getTilt() <= -levelDegree) {
-                    return -robotSpeedSlow;
-                }
-            case 4:
-                return 0;
-        }
-        return 0;
-    }
-}
\ No newline at end of file
+        mActiveRoutine = mScoreAndBalanceRoutine;
+        return mScoreAndBalanceRoutine.calculate(mAttitude.getTimestamp(), getTilt(), getTiltRate());
+    }
+}
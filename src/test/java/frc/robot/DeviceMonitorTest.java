@@ -0,0 +1,134 @@
+package frc.robot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.revrobotics.REVLibError;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link DeviceMonitor}'s counting and health, fed call times and errors directly. The devices are
+ * not published, so nothing here needs NetworkTables.
+ */
+class DeviceMonitorTest {
+  // a REVLib call on a healthy bus takes tens of microseconds
+  private static final long kFastNanos = 30_000;
+  private static final long kSlowNanos = 3_000_000;
+  private static final double kSlowMillis = 1;
+
+  private DeviceMonitor.Device m_device;
+  private DeviceMonitor.Call m_setCall;
+
+  @BeforeEach
+  void setup() {
+    m_device = new DeviceMonitor.Device("Shoulder (5)");
+    m_setCall = m_device.addCall("set", kSlowMillis);
+  }
+
+  private static void record(DeviceMonitor.Call call, int times, long nanos, REVLibError error) {
+    for (int i = 0; i < times; i++) {
+      call.record(nanos, error);
+    }
+  }
+
+  @Test
+  void idleWithoutCalls() {
+    m_device.update();
+    assertEquals(DeviceMonitor.kIdle, m_device.getHealth());
+  }
+
+  @Test
+  void fastCallsWithoutErrorsAreOk() {
+    record(m_setCall, 50, kFastNanos, REVLibError.kOk);
+    m_device.update();
+
+    assertEquals(DeviceMonitor.kOk, m_device.getHealth());
+    assertEquals(50, m_setCall.getCallCount());
+    assertEquals(0, m_setCall.getErrorCount());
+    assertEquals(0, m_setCall.getTimeoutCount());
+    assertEquals(0, m_setCall.getSlowCount());
+  }
+
+  @Test
+  void callOverItsLimitIsSlow() {
+    record(m_setCall, 10, kFastNanos, REVLibError.kOk);
+    m_setCall.record(kSlowNanos, REVLibError.kOk);
+    m_device.update();
+
+    assertEquals(DeviceMonitor.kSlow, m_device.getHealth());
+    assertEquals(11, m_setCall.getCallCount());
+    assertEquals(1, m_setCall.getSlowCount());
+  }
+
+  @Test
+  void onlyTimeoutsIsMissing() {
+    record(m_setCall, 20, kFastNanos, REVLibError.kTimeout);
+    m_device.update();
+
+    assertEquals(DeviceMonitor.kMissing, m_device.getHealth());
+    assertEquals(20, m_setCall.getTimeoutCount());
+    assertEquals(0, m_setCall.getErrorCount());
+  }
+
+  @Test
+  void canDisconnectedCountsAsTimeout() {
+    record(m_setCall, 3, kFastNanos, REVLibError.kCANDisconnected);
+
+    assertEquals(3, m_setCall.getTimeoutCount());
+    assertEquals(0, m_setCall.getErrorCount());
+  }
+
+  @Test
+  void someFailedCallsAreErrors() {
+    record(m_setCall, 10, kFastNanos, REVLibError.kOk);
+    record(m_setCall, 2, kFastNanos, REVLibError.kError);
+    m_setCall.record(kFastNanos, REVLibError.kTimeout);
+    m_device.update();
+
+    assertEquals(DeviceMonitor.kErrors, m_device.getHealth());
+    assertEquals(2, m_setCall.getErrorCount());
+    assertEquals(1, m_setCall.getTimeoutCount());
+  }
+
+  @Test
+  void failedReadIsAnError() {
+    // the CANLight reports a battery voltage of 0 when it does not answer
+    DeviceMonitor.Device light = new DeviceMonitor.Device("CANLight (1)");
+    DeviceMonitor.Call voltageCall = light.addCall("getBatteryVoltage", kSlowMillis);
+    voltageCall.recordError(kFastNanos);
+    voltageCall.record(kFastNanos);
+    light.update();
+
+    assertEquals(DeviceMonitor.kErrors, light.getHealth());
+    assertEquals(1, voltageCall.getErrorCount());
+    assertEquals(2, voltageCall.getCallCount());
+  }
+
+  @Test
+  void failingCallMakesTheDeviceUnhealthy() {
+    DeviceMonitor.Call positionCall = m_device.addCall("getPosition", kSlowMillis);
+    record(m_setCall, 10, kFastNanos, REVLibError.kOk);
+    record(positionCall, 10, kFastNanos, REVLibError.kTimeout);
+    m_device.update();
+
+    // one call still answers, so the device is there but not working
+    assertEquals(DeviceMonitor.kErrors, m_device.getHealth());
+  }
+
+  @Test
+  void healthIsPerWindowAndCountsKeepRunning() {
+    record(m_setCall, 5, kFastNanos, REVLibError.kTimeout);
+    m_device.update();
+    assertEquals(DeviceMonitor.kMissing, m_device.getHealth());
+
+    // the Spark MAX came back on the bus
+    record(m_setCall, 5, kFastNanos, REVLibError.kOk);
+    m_device.update();
+    assertEquals(DeviceMonitor.kOk, m_device.getHealth());
+
+    m_device.update();
+    assertEquals(DeviceMonitor.kIdle, m_device.getHealth());
+    assertEquals(10, m_setCall.getCallCount());
+    assertEquals(5, m_setCall.getTimeoutCount());
+  }
+}